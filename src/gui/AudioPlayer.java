@@ -1,7 +1,9 @@
 package gui;
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
 
+import javafx.animation.AnimationTimer;
 import javafx.application.Application;
 import javafx.beans.InvalidationListener;
 import javafx.beans.Observable;
@@ -11,19 +13,26 @@ import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.control.ProgressBar;
+import javafx.scene.control.ProgressIndicator;
 import javafx.scene.control.Alert.AlertType;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
+import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
 import javafx.stage.FileChooser;
 import javafx.stage.FileChooser.ExtensionFilter;
+import model.DiskPCMCache;
 import model.Player;
+import runner.OpenProgress;
 import javafx.stage.Stage;
 
 public class AudioPlayer extends Application implements InvalidationListener{
 
+	/** The command line option that turns on the cache of decoded files */
+	private static final String CACHE_OPTION = "--cache";
+
 	/** This is the model for the program*/
 	private Player p;
 	/** Holds a reference to the primary stage for this application */
@@ -33,20 +42,46 @@ public class AudioPlayer extends Application implements InvalidationListener{
 	private Button btnPlayPause;
 	/** the button that is clicked to stop the audio */
 	private Button stop;
+	/** the button that is clicked to play the next file */
+	private Button next;
 	/** The progressbar that shows how far through the song it is. */
 	private ProgressBar pb;
+	/** The progressbar behind pb that shows how far the song is loaded */
+	private ProgressBar pbBuffered;
 	/** The play image */
 	private Image playImg;
 	/** The stop image */
 	private Image stopImg;
 	/** The pause image */
 	private Image pauseImg;
+	/** The view of the play image on the play/pause button, made once */
+	private ImageView playImgView;
+	/** The view of the pause image on the play/pause button, made once */
+	private ImageView pauseImgView;
 	/** The label for the time in the audio file*/
 	private Label lblTime;
 	/** The label for the length of the audio file*/
 	private Label lblLength;
 	/** The label that shows the file info (sample rate & channels)*/
 	private Label lblInfo;
+	/** Updates the progress bar and time labels every frame, from the playback position */
+	private AnimationTimer clock;
+	/** The time that lblTime shows, so it is only changed when the time changes */
+	private int shownTime = -2;
+	/** The length that lblLength shows */
+	private int shownLength = -2;
+	/** The progress that pb shows */
+	private double shownProgress = -1;
+	/** The progress that pbBuffered shows */
+	private double shownBuffered = -1;
+	/** The row with the load indicator, shown while a file is opening */
+	private HBox loading;
+	/** Shows how much of the file that is opening was read */
+	private ProgressIndicator loadIndicator;
+	/** The label with the name of the file that is opening */
+	private Label lblLoading;
+	/** The opening that the load indicator shows, null if it is hidden */
+	private OpenProgress shownOpening;
 	
 	public static void main(String[] args) {
 		//launch the program
@@ -67,26 +102,42 @@ public class AudioPlayer extends Application implements InvalidationListener{
 		page.setFillWidth(true);
 		
 		//the open button
-		Button open = new Button("Open a file");
+		Button open = new Button("Open files");
 		open.setOnAction(event -> {
 			FileChooser fc = new FileChooser();
-			fc.setTitle("Select the audio file");
+			fc.setTitle("Select the audio files");
 			fc.getExtensionFilters().add(new ExtensionFilter("Audio files (*.aac, *.aif, *.aiff, *.flac, *.m4a, *.mp3, *.ogg, *.wav)", 
 					"*.aac", "*.aif", "*.aiff", "*.flac", "*.m4a", "*.mp3", "*.ogg", "*.wav"));
-			File f = fc.showOpenDialog(primaryStage);
-			if(f == null){ return; } //no file selected
+			List<File> files = fc.showOpenMultipleDialog(primaryStage);
+			if(files == null || files.isEmpty()){ return; } //no file selected
 			
-			try {
-				p.openFile(f);
-			} catch (IOException e) {
+			//the first file is opened on another thread, the rest play after it
+			p.openFileAsync(files.get(0), e -> {
 				Alert a = new Alert(AlertType.ERROR);
 				a.setTitle("An error occured loading the file.");
 				a.setContentText("Error message: " + e.getMessage());
 				a.showAndWait();
+			});
+			for(int i = 1; i < files.size(); i++){
+				p.enqueue(files.get(i));
 			}
 		});
 		page.getChildren().add(open);
 		
+		//the row that shows a file is loading, only visible while it is
+		loading = new HBox();
+		loading.setSpacing(10);
+		loadIndicator = new ProgressIndicator(ProgressIndicator.INDETERMINATE_PROGRESS);
+		loading.getChildren().add(loadIndicator);
+		lblLoading = new Label();
+		loading.getChildren().add(lblLoading);
+		Button cancel = new Button("Cancel");
+		cancel.setOnAction(event -> p.cancelOpening());
+		loading.getChildren().add(cancel);
+		loading.setVisible(false);
+		loading.setManaged(false);
+		page.getChildren().add(loading);
+		
 		//the row of 2 labels and the progress bar
 		HBox progress = new HBox();
 		
@@ -94,11 +145,25 @@ public class AudioPlayer extends Application implements InvalidationListener{
 		HBox.setHgrow(lblTime, Priority.NEVER);
 		progress.getChildren().add(lblTime);
 		
-		//the progress bar
+		//the progress bar, over a lighter bar that shows how far the file is loaded
+		StackPane bars = new StackPane();
+		HBox.setHgrow(bars, Priority.ALWAYS);
+		pbBuffered = new ProgressBar();
+		pbBuffered.setMaxWidth(Double.MAX_VALUE);
+		pbBuffered.setProgress(0);
+		pbBuffered.setStyle("-fx-accent: #b8cce4;");
+		bars.getChildren().add(pbBuffered);
 		pb = new ProgressBar();
-		HBox.setHgrow(pb, Priority.ALWAYS);
+		pb.setMaxWidth(Double.MAX_VALUE);
 		pb.setProgress(0);
-		progress.getChildren().add(pb);
+		//the track is see-through so the loaded part shows
+		pb.setStyle("-fx-control-inner-background: transparent; -fx-text-box-border: transparent; "
+				+ "-fx-shadow-highlight-color: transparent;");
+		//clicking or dragging on the bar moves to that part of the file
+		pb.setOnMousePressed(event -> seekTo(event.getX()));
+		pb.setOnMouseDragged(event -> seekTo(event.getX()));
+		bars.getChildren().add(pb);
+		progress.getChildren().add(bars);
 		
 		lblLength = new Label("--:--");
 		HBox.setHgrow(lblLength, Priority.NEVER);
@@ -109,26 +174,26 @@ public class AudioPlayer extends Application implements InvalidationListener{
 		//the buttons
 		HBox buttons = new HBox();
 		
-		//play/pause button
+		//play/pause button, the two images are switched between
 		btnPlayPause = new Button();
-		ImageView playPauseImgView = new ImageView(playImg);
-		playPauseImgView.setFitWidth(40);
-		playPauseImgView.setFitHeight(40);
-		btnPlayPause.setGraphic(playPauseImgView);
+		playImgView = new ImageView(playImg);
+		playImgView.setFitWidth(40);
+		playImgView.setFitHeight(40);
+		pauseImgView = new ImageView(pauseImg);
+		pauseImgView.setFitWidth(40);
+		pauseImgView.setFitHeight(40);
+		btnPlayPause.setGraphic(playImgView);
 		btnPlayPause.setOnAction(event -> {
 			if(p.canPlay()){
 				//button plays
 				p.play();
 				//button should show pause
-				ImageView imgView = new ImageView(pauseImg);
-				imgView.setFitWidth(40);
-				imgView.setFitHeight(40);
-				btnPlayPause.setGraphic(imgView);
+				btnPlayPause.setGraphic(pauseImgView);
 			} else {
 				//button pauses
 				p.pause();
 				//button should show play
-				btnPlayPause.setGraphic(playPauseImgView);
+				btnPlayPause.setGraphic(playImgView);
 			}
 		});
 		buttons.getChildren().add(btnPlayPause);
@@ -144,6 +209,13 @@ public class AudioPlayer extends Application implements InvalidationListener{
 		});
 		buttons.getChildren().add(stop);
 		
+		//next button, plays the next file that was opened, it is enabled once the next file is open
+		next = new Button("Next");
+		next.setOnAction(event -> {
+			p.skip();
+		});
+		buttons.getChildren().add(next);
+		
 		page.getChildren().add(buttons);
 		
 		//add the info label 
@@ -152,15 +224,34 @@ public class AudioPlayer extends Application implements InvalidationListener{
 		
 		//construct the model
 		p = new Player();
+		//caching decodes each file that plays a second time, so it is only on if asked for
+		if(getParameters().getRaw().contains(CACHE_OPTION)){
+			try {
+				//files that were played before start without decoding
+				p.setDiskCache(DiskPCMCache.createDefault());
+			} catch (IOException e) {
+				System.out.println("Unable to make the cache folder: " + e.getMessage());
+			}
+		}
 		p.addListener(this);
 		invalidated(p);
 		
+		//the progress is read every frame, instead of playback telling the GUI
+		clock = new AnimationTimer() {
+			@Override
+			public void handle(long now) {
+				updateProgress();
+			}
+		};
+		clock.start();
+		
 		Scene scene = new Scene(page);
 		primaryStage.setScene(scene);
 		primaryStage.setTitle("Audio Player");
 		primaryStage.setResizable(false);
 		primaryStage.setOnCloseRequest(event ->{
 			//close the player when this closes
+			clock.stop();
 			p.close();
 		});
 		primaryStage.show();
@@ -176,40 +267,87 @@ public class AudioPlayer extends Application implements InvalidationListener{
 			btnPlayPause.setDisable(true);
 		} else {
 			btnPlayPause.setDisable(false);
-			ImageView imgView;
-			if(p.canPlay()){
-				//play should show
-				imgView = new ImageView(playImg);
-			} else {
-				//pause should show
-				imgView = new ImageView(pauseImg);
+			//play should show if it can play, otherwise pause
+			ImageView imgView = p.canPlay() ? playImgView : pauseImgView;
+			if(btnPlayPause.getGraphic() != imgView){
+				btnPlayPause.setGraphic(imgView);
 			}
-			imgView.setFitWidth(40);
-			imgView.setFitHeight(40);
-			btnPlayPause.setGraphic(imgView);
 		}
 		//stop button
 		stop.setDisable(!p.canStop());
+		//next button
+		next.setDisable(!p.canSkip());
 
 		//progressbar and labels
-		int time = p.getTime();
-		int length = p.getLength();
-		if(time != -1 && length != -1){
-			pb.setProgress((double)time / (double)length);
-		}
-		int seconds = time % 60;
-		lblTime.setText(time == -1 ? "--:--" : "" + (time / 60) + ":" + 
-				(seconds < 10 ? "0" + seconds : seconds));
-		seconds = length % 60;
-		lblLength.setText(length == -1 ? "--:--" : "" + (length / 60) + ":" + 
-				(seconds < 10 ? "0" + seconds : seconds));
+		updateProgress();
 		//the info label
 		lblInfo.setText(p.getInfo());
 		
-		//if at end, update
-		if(p.isAtEnd()){
+		//if at end, update, unless the next file is still opening and plays when it is open
+		if(p.isAtEnd() && p.getQueueSize() == 0){
 			p.stop();
 		}
 	}
 
+	/**
+	 * Updates the progress bar and the time labels from the position of playback.
+	 * Called every frame, so only the controls that changed are set, and nothing is made unless a label changes.
+	 */
+	private void updateProgress(){
+		//the load indicator
+		OpenProgress opening = p.getOpening();
+		if(opening != shownOpening){
+			loading.setVisible(opening != null);
+			loading.setManaged(opening != null);
+			if(opening != null){
+				lblLoading.setText("Loading " + opening.getFilename());
+			}
+			shownOpening = opening;
+		}
+		if(opening != null){
+			double fraction = opening.getFraction();
+			double value = fraction < 0 ? ProgressIndicator.INDETERMINATE_PROGRESS : fraction;
+			if(value != loadIndicator.getProgress()){
+				loadIndicator.setProgress(value);
+			}
+		}
+		
+		long lengthFrames = p.getLengthFrames();
+		double progress = lengthFrames > 0 ? (double)p.getPositionFrames() / (double)lengthFrames : 0;
+		if(progress != shownProgress){
+			pb.setProgress(progress);
+			shownProgress = progress;
+		}
+		double buffered = lengthFrames > 0 ? (double)Math.max(0, p.getBufferedFrames()) / (double)lengthFrames : 0;
+		if(buffered != shownBuffered){
+			pbBuffered.setProgress(buffered);
+			shownBuffered = buffered;
+		}
+		int time = p.getTime();
+		if(time != shownTime){
+			lblTime.setText(formatTime(time));
+			shownTime = time;
+		}
+		int length = p.getLength();
+		if(length != shownLength){
+			lblLength.setText(formatTime(length));
+			shownLength = length;
+		}
+	}
+
+	/** Formats a time in seconds as minutes:seconds, or --:-- if it is -1 */
+	private static String formatTime(int time){
+		if(time == -1){ return "--:--"; }
+		int seconds = time % 60;
+		return "" + (time / 60) + ":" + (seconds < 10 ? "0" + seconds : seconds);
+	}
+
+	/** Moves playback to the part of the file at x pixels along the progress bar */
+	private void seekTo(double x){
+		long lengthFrames = p.getLengthFrames();
+		if(lengthFrames <= 0 || pb.getWidth() <= 0){ return; }
+		double fraction = Math.max(0, Math.min(1, x / pb.getWidth()));
+		p.seek((long)(fraction * lengthFrames));
+	}
+
 }
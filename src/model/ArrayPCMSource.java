@@ -0,0 +1,61 @@
+package model;
+
+/**
+ * A source of PCM data that is all in memory, such as a file that was decoded all at once.
+ * @author zach jones
+ *
+ */
+public class ArrayPCMSource implements PCMSource {
+
+	/** The sound data */
+	private final byte[] data;
+	/** The number of bytes in a frame (one sample on all channels) */
+	private final int frameSize;
+	/** The total number of frames of audio */
+	private final long numFrames;
+
+	/**
+	 * Creates a source over the sound data.
+	 * @param data The frames of audio, one after the other.
+	 * @param frameSize The number of bytes in each frame.
+	 */
+	public ArrayPCMSource(byte[] data, int frameSize){
+		this.data = data;
+		this.frameSize = frameSize;
+		this.numFrames = data.length / frameSize;
+	}
+
+	@Override
+	public int getFrameSize() {
+		return this.frameSize;
+	}
+
+	@Override
+	public long getNumFrames() {
+		return this.numFrames;
+	}
+
+	@Override
+	public int read(long frame, byte[] dst, int offset, int count) {
+		if(frame >= this.numFrames){ return 0; }
+		count = (int)Math.min(count, this.numFrames - frame);
+		System.arraycopy(data, (int)(frame * frameSize), dst, offset, count * frameSize);
+		return count;
+	}
+
+	@Override
+	public long getBufferedEnd(long frame) {
+		//all of the frames are in memory
+		return this.numFrames;
+	}
+
+	@Override
+	public long getMemoryBytes() {
+		return this.data.length;
+	}
+
+	@Override
+	public void close() {
+		//nothing to release, the array is garbage collected
+	}
+}
@@ -0,0 +1,88 @@
+package model;
+
+/**
+ * Wraps a source of PCM data to change the byte order of every sample as it is read.
+ * This is used to play big-endian data on a line that only takes little-endian data, 
+ * or the other way around.
+ * @author zach jones
+ *
+ */
+public class ByteSwapPCMSource implements PCMSource {
+
+	/** The source that has the data in the other byte order */
+	private final PCMSource source;
+	/** The number of bytes in one sample of one channel */
+	private final int bytesPerSample;
+
+	/**
+	 * Creates a source that swaps the byte order of the samples in the source.
+	 * @param source The source of the data to swap.
+	 * @param bytesPerSample The number of bytes in one sample of one channel.
+	 */
+	public ByteSwapPCMSource(PCMSource source, int bytesPerSample){
+		this.source = source;
+		this.bytesPerSample = bytesPerSample;
+	}
+
+	@Override
+	public int getFrameSize() {
+		return source.getFrameSize();
+	}
+
+	@Override
+	public long getNumFrames() {
+		return source.getNumFrames();
+	}
+
+	@Override
+	public int read(long frame, byte[] dst, int offset, int count) {
+		count = source.read(frame, dst, offset, count);
+		int end = offset + count * source.getFrameSize();
+		//swap the whole block in place, one loop for each sample size
+		switch(bytesPerSample){
+		case 2:
+			for(int i = offset; i < end; i += 2){
+				byte temp = dst[i];
+				dst[i] = dst[i + 1];
+				dst[i + 1] = temp;
+			}
+			break;
+		case 3:
+			for(int i = offset; i < end; i += 3){
+				byte temp = dst[i];
+				dst[i] = dst[i + 2];
+				dst[i + 2] = temp;
+			}
+			break;
+		case 4:
+			for(int i = offset; i < end; i += 4){
+				byte temp = dst[i];
+				dst[i] = dst[i + 3];
+				dst[i + 3] = temp;
+				temp = dst[i + 1];
+				dst[i + 1] = dst[i + 2];
+				dst[i + 2] = temp;
+			}
+			break;
+		default:
+			//a single byte has no order
+			break;
+		}
+		return count;
+	}
+
+	@Override
+	public long getBufferedEnd(long frame) {
+		return this.source.getBufferedEnd(frame);
+	}
+
+	@Override
+	public long getMemoryBytes() {
+		return this.source.getMemoryBytes();
+	}
+
+	@Override
+	public void close() {
+		source.close();
+	}
+}
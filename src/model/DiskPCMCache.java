@@ -0,0 +1,239 @@
+package model;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A folder of decoded sound data, so a compressed file that was played before can be memory-mapped
+ * instead of decoded again. Each file is a small header and then the raw 16 bit little endian samples.
+ * The files are named by a hash of the path, size and time modified of the file they were decoded from,
+ * so a file that is changed is decoded again. When the folder is over its size,
+ * the files that were used least recently are deleted.
+ * @author zach jones
+ *
+ */
+public class DiskPCMCache {
+
+	/** The default most bytes in the folder (1 GiB, about 100 minutes of 44.1 kHz stereo) */
+	public static final long DEFAULT_MAX_BYTES = 1L << 30;
+	/** The number of bytes before the samples */
+	private static final int HEADER_SIZE = 32;
+	/** The first 4 bytes of each file */
+	private static final int MAGIC = 0x50434D32; //"PCM2"
+	/** The ending of the finished files */
+	private static final String EXTENSION = ".pcm";
+	/** The number of frames written at a time */
+	private static final int CHUNK_FRAMES = 4096;
+
+	/** The folder with the files */
+	private final Path folder;
+	/** The most bytes of files to keep */
+	private final long maxBytes;
+
+	/**
+	 * Creates a cache in the folder, which is made if it doesn't exist.
+	 * @param folder The folder to keep the files in.
+	 * @param maxBytes The most bytes of files to keep.
+	 * @throws IOException If the folder can't be made.
+	 */
+	public DiskPCMCache(Path folder, long maxBytes) throws IOException {
+		this.folder = folder;
+		this.maxBytes = maxBytes;
+		Files.createDirectories(folder);
+	}
+
+	/**
+	 * Creates a cache of DEFAULT_MAX_BYTES in the temp folder.
+	 * @return The cache.
+	 * @throws IOException If the folder can't be made.
+	 */
+	public static DiskPCMCache createDefault() throws IOException {
+		return new DiskPCMCache(Paths.get(System.getProperty("java.io.tmpdir"), "AudioPlayer-cache"), DEFAULT_MAX_BYTES);
+	}
+
+	/**
+	 * Gets the name that the decoded data of a file is kept under.
+	 * @param file The compressed file.
+	 * @return The key, which changes if the file is moved or changed.
+	 */
+	public String getKey(File file){
+		String id = file.getAbsolutePath() + "|" + file.length() + "|" + file.lastModified();
+		try {
+			byte[] hash = MessageDigest.getInstance("SHA-1").digest(id.getBytes(StandardCharsets.UTF_8));
+			StringBuilder sb = new StringBuilder();
+			for(byte b : hash){
+				sb.append(String.format("%02x", b));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			//every java platform has SHA-1
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Opens the decoded data of a file, if it is in the cache.
+	 * @param key The key from getKey.
+	 * @return The decoded data, or null if it is not here (or the file is damaged).
+	 */
+	public Entry open(String key){
+		Path path = folder.resolve(key + EXTENSION);
+		if(!Files.exists(path)){
+			return null;
+		}
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			while(header.hasRemaining() && channel.read(header) >= 0){
+				//read the whole header
+			}
+			header.flip();
+			if(header.remaining() < HEADER_SIZE || header.getInt() != MAGIC){
+				throw new IOException("Not a cache file");
+			}
+			int sampleRate = header.getInt();
+			int channels = header.getInt();
+			long numFrames = header.getLong();
+			if(channels < 1 || channels * 2L * numFrames + HEADER_SIZE != channel.size()){
+				throw new IOException("The cache file is the wrong size");
+			}
+			//the mapping stays valid after the file is closed
+			PCMSource source = new MappedPCMSource(channel, HEADER_SIZE, numFrames, channels * 2);
+			//the time modified is the time last used, for choosing what to delete
+			Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+			return new Entry(source, sampleRate, channels);
+		} catch(IOException e){
+			System.out.println("Unable to open the cached file " + path + ": " + e.getMessage());
+			delete(path);
+			return null;
+		}
+	}
+
+	/**
+	 * Decodes a whole file into the cache, then deletes the least recently used files if the folder is too big.
+	 * The data is written to a temporary file that is renamed when it is done, so a file that is being written
+	 * is never opened. If the thread is interrupted this stops and nothing is added.
+	 * @param key The key from getKey.
+	 * @param sampleRate The number of samples per second.
+	 * @param channels The number of channels, each sample is 16 bit little endian.
+	 * @param producer The producer of all the frames, from the first, this is closed when done.
+	 * @return true if the file was added, false if this was interrupted.
+	 * @throws IOException If there is an error decoding or writing.
+	 */
+	public boolean store(String key, int sampleRate, int channels, StreamPCMSource.Producer producer) throws IOException {
+		Path temp = folder.resolve(key + "-" + System.nanoTime() + ".tmp");
+		boolean done = false;
+		try(FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)){
+			int frameSize = channels * 2;
+			byte[] chunk = new byte[CHUNK_FRAMES * frameSize];
+			long numFrames = 0;
+			long position = HEADER_SIZE;
+			int count;
+			while((count = producer.produce(chunk, 0, CHUNK_FRAMES)) > 0){
+				if(Thread.currentThread().isInterrupted()){
+					return false;
+				}
+				ByteBuffer buffer = ByteBuffer.wrap(chunk, 0, count * frameSize);
+				while(buffer.hasRemaining()){
+					position += channel.write(buffer, position);
+				}
+				numFrames += count;
+			}
+			//the header is written last, since the length isn't known until the end
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC).putInt(sampleRate).putInt(channels).putLong(numFrames);
+			header.clear();
+			while(header.hasRemaining()){
+				channel.write(header, header.position());
+			}
+			done = true;
+		} finally {
+			producer.close();
+			if(!done){
+				delete(temp);
+			}
+		}
+		Files.move(temp, folder.resolve(key + EXTENSION), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		evict();
+		return true;
+	}
+
+	/** Deletes the least recently used files until the folder is under the size */
+	private void evict() throws IOException {
+		List<Path> files = new ArrayList<>();
+		long total = 0;
+		try(DirectoryStream<Path> stream = Files.newDirectoryStream(folder, "*" + EXTENSION)){
+			for(Path path : stream){
+				files.add(path);
+				total += Files.size(path);
+			}
+		}
+		if(total <= maxBytes){
+			return;
+		}
+		files.sort((a, b) -> Long.compare(a.toFile().lastModified(), b.toFile().lastModified()));
+		for(int i = 0; i < files.size() && total > maxBytes; i++){
+			long size = Files.size(files.get(i));
+			if(delete(files.get(i))){
+				System.out.println("Removed from the cache: " + files.get(i).getFileName());
+				total -= size;
+			}
+		}
+	}
+
+	/** Deletes a file, returns true if it was deleted */
+	private static boolean delete(Path path){
+		try {
+			return Files.deleteIfExists(path);
+		} catch(IOException e){
+			//it could be open (on windows), it is tried again next time
+			return false;
+		}
+	}
+
+	/**
+	 * The decoded data of a file that is in the cache.
+	 */
+	public static class Entry {
+		/** The mapped samples */
+		private final PCMSource source;
+		/** The number of samples per second */
+		private final int sampleRate;
+		/** The number of channels */
+		private final int channels;
+
+		/** Creates the entry */
+		private Entry(PCMSource source, int sampleRate, int channels){
+			this.source = source;
+			this.sampleRate = sampleRate;
+			this.channels = channels;
+		}
+
+		/** Gets the samples, 16 bit little endian with the channels interleaved */
+		public PCMSource getSource(){
+			return this.source;
+		}
+
+		/** Gets the number of samples per second */
+		public int getSampleRate(){
+			return this.sampleRate;
+		}
+
+		/** Gets the number of channels */
+		public int getChannels(){
+			return this.channels;
+		}
+	}
+}
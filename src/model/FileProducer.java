@@ -0,0 +1,60 @@
+package model;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Produces raw PCM frames by reading them from a region of a file.
+ * This is used to stream uncompressed formats, like wav and aiff.
+ * @author zach jones
+ *
+ */
+public class FileProducer implements StreamPCMSource.Producer {
+
+	/** The channel to read the file with */
+	private final FileChannel channel;
+	/** The byte offset in the file of the first frame */
+	private final long start;
+	/** The number of bytes in a frame (one sample on all channels) */
+	private final int frameSize;
+	/** The byte offset in the file of the next frame to read */
+	private long position;
+
+	/**
+	 * Creates a producer that reads from the first frame.
+	 * @param channel The channel for the file, this is closed with the producer.
+	 * @param start The byte offset in the file that the sound data starts at.
+	 * @param frameSize The number of bytes in each frame.
+	 */
+	public FileProducer(FileChannel channel, long start, int frameSize){
+		this.channel = channel;
+		this.start = start;
+		this.frameSize = frameSize;
+		this.position = start;
+	}
+
+	@Override
+	public void seek(long frame) {
+		this.position = this.start + frame * this.frameSize;
+	}
+
+	@Override
+	public int produce(byte[] dst, int offset, int count) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(dst, offset, count * frameSize);
+		while(buffer.hasRemaining()){
+			int num = channel.read(buffer, position + (buffer.position() - offset));
+			if(num < 0){
+				//end of the file, a partial frame at the end is dropped
+				break;
+			}
+		}
+		int frames = (buffer.position() - offset) / frameSize;
+		this.position += (long)frames * frameSize;
+		return frames;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
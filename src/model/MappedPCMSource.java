@@ -0,0 +1,93 @@
+package model;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * Reads the raw PCM sound data straight out of a memory-mapped region of a file.
+ * Nothing is loaded up front, the operating system pages the data in as it is played,
+ * so opening is instant and files of several gb can be played.
+ * @author zach jones
+ *
+ */
+public class MappedPCMSource implements PCMSource {
+
+	/** The number of bytes mapped at a time (1 GiB), a single mapping can't be over 2gb */
+	private static final long SEGMENT_SIZE = 1L << 30;
+
+	/** The mapped segments of the data, each is SEGMENT_SIZE bytes except for the last one */
+	private final MappedByteBuffer[] segments;
+	/** The number of bytes in a frame (one sample on all channels) */
+	private final int frameSize;
+	/** The total number of frames in the region */
+	private final long numFrames;
+
+	/**
+	 * Creates a source over the region of the file.
+	 * @param channel The open channel for the file, this can be closed once this is constructed.
+	 * @param start The byte offset in the file that the sound data starts at.
+	 * @param numFrames The number of frames of sound data, this is cut short if the file is not long enough.
+	 * @param frameSize The number of bytes in each frame.
+	 * @throws IOException If there is an error mapping the file.
+	 */
+	public MappedPCMSource(FileChannel channel, long start, long numFrames, int frameSize) throws IOException {
+		this.frameSize = frameSize;
+		//some files have a size that is too big (files that were being recorded to)
+		long available = Math.max(0, channel.size() - start) / frameSize;
+		this.numFrames = Math.min(numFrames, available);
+
+		long length = this.numFrames * frameSize;
+		this.segments = new MappedByteBuffer[(int)((length + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+		for(int i = 0; i < segments.length; i++){
+			//mapping only reserves the addresses, nothing is read until it is used
+			long offset = i * SEGMENT_SIZE;
+			segments[i] = channel.map(MapMode.READ_ONLY, start + offset, Math.min(SEGMENT_SIZE, length - offset));
+		}
+	}
+
+	@Override
+	public int getFrameSize() {
+		return this.frameSize;
+	}
+
+	@Override
+	public long getNumFrames() {
+		return this.numFrames;
+	}
+
+	@Override
+	public int read(long frame, byte[] dst, int offset, int count) {
+		if(frame >= this.numFrames){ return 0; }
+		count = (int)Math.min(count, this.numFrames - frame);
+		long position = frame * this.frameSize;
+		int len = count * this.frameSize;
+		while(len > 0){
+			MappedByteBuffer segment = segments[(int)(position / SEGMENT_SIZE)];
+			int index = (int)(position % SEGMENT_SIZE);
+			int num = Math.min(len, segment.capacity() - index);
+			segment.get(index, dst, offset, num);
+			position += num;
+			offset += num;
+			len -= num;
+		}
+		return count;
+	}
+
+	@Override
+	public long getBufferedEnd(long frame) {
+		//the system reads the mapped pages as fast as they are needed
+		return this.numFrames;
+	}
+
+	@Override
+	public long getMemoryBytes() {
+		//the mapped pages are not on the heap, the system drops them when it needs the memory
+		return 0;
+	}
+
+	@Override
+	public void close() {
+		//the mapping is released when it is garbage collected
+	}
+}
@@ -0,0 +1,42 @@
+package model;
+
+/**
+ * A source of raw PCM sound data that the SoundPlayer reads frames from.
+ * @author zach jones
+ *
+ */
+public interface PCMSource {
+	/** Gets the number of bytes in a frame (one sample on all channels) */
+	public int getFrameSize();
+	
+	/** Gets the total number of frames of audio */
+	public long getNumFrames();
+	
+	/**
+	 * Copies whole frames out of this source.
+	 * @param frame The index of the first frame to copy.
+	 * @param dst The array to copy into.
+	 * @param offset The index in dst to start at.
+	 * @param count The maximum number of frames to copy.
+	 * @return The number of frames copied, which is less than count near the end, 
+	 * or if the frames are not loaded yet.
+	 */
+	public int read(long frame, byte[] dst, int offset, int count);
+	
+	/**
+	 * Gets how far the frames are loaded from a frame, without loading anything.
+	 * @param frame The index of the frame to start at, usually where playback is.
+	 * @return The index after the last frame that is loaded from frame on with none missing,
+	 * frame if it isn't loaded, or getNumFrames() if it is all loaded.
+	 */
+	public long getBufferedEnd(long frame);
+	
+	/**
+	 * Gets about how many bytes of memory this holds, not counting memory-mapped files,
+	 * so the number of files that are open at once can be kept under a budget.
+	 */
+	public long getMemoryBytes();
+	
+	/** Releases the file handles and stops any loading */
+	public void close();
+}
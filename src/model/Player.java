@@ -1,26 +1,59 @@
 package model;
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import javafx.application.Platform;
 import javafx.beans.InvalidationListener;
 import javafx.beans.Observable;
-import runner.AiffRunner;
 import runner.AudioRun;
-import runner.MP3Runner;
-import runner.WAVRunner;
+import runner.CodecRegistry;
+import runner.OpenProgress;
 
 public class Player implements Observable, AudioRun {
 
-	private InvalidationListener observer;
+	/** The listeners, each one is told about changes on its own executor */
+	private final List<Subscriber> subscribers;
 	private String filename;
 	private String shortFilename;
 	private AudioRun runner;
 
 	/** Holds if a file is being played */
 	private boolean isPlaying;
+	/** The cache of decoded files, null if there is none */
+	private DiskPCMCache diskCache;
+	/** The files to play after the current one, the next ones are opened ahead */
+	private final Playlist playlist;
+	/** The file that is being opened on another thread, null if there is none */
+	private OpenProgress opening;
 
 	public Player(){
 		isPlaying = false;
+		subscribers = new CopyOnWriteArrayList<>();
+		playlist = new Playlist(this, Playlist.DEFAULT_PRELOAD_COUNT, Playlist.DEFAULT_MEMORY_BUDGET);
+		//the next file can be linked once it is open, or played if the current one ended already
+		playlist.setOnPreloaded(() -> {
+			linkNext();
+			stateChanged();
+		});
+	}
+
+	/**
+	 * Sets the cache that compressed files are decoded into, so they start right away the next time.
+	 * This is used for the files opened after it is set.
+	 * @param diskCache The cache, or null to not cache.
+	 */
+	public void setDiskCache(DiskPCMCache diskCache){
+		this.diskCache = diskCache;
+	}
 
+	/** Gets the cache that compressed files are decoded into, null if there is none */
+	public DiskPCMCache getDiskCache(){
+		return this.diskCache;
 	}
 
 	/**
@@ -28,31 +61,158 @@ public class Player implements Observable, AudioRun {
 	 * @param filename The audio file's full name to open.
 	 */
 	public void openFile(File filename) throws IOException {
+		cancelOpening();
+		System.out.println("Opening file: " + filename.getAbsolutePath());
+		//the format is found from the start of the file, not the extension
+		setRunner(filename, CodecRegistry.open(filename, this));
+	}
+
+	/**
+	 * Opens the audio file on another thread, so the GUI isn't held up while a large file is read.
+	 * The current file keeps playing until the new one is open.
+	 * If another file is opened before this one is done, this one is cancelled, and it stops reading the file.
+	 * @param filename The audio file to open.
+	 * @param onError Called on the GUI thread if the file can't be opened, it isn't called if it is cancelled.
+	 * @return The progress of the opening, which can be cancelled.
+	 */
+	public OpenProgress openFileAsync(File filename, Consumer<IOException> onError){
+		cancelOpening();
+		System.out.println("Opening file: " + filename.getAbsolutePath());
+		OpenProgress progress = new OpenProgress(filename.getName());
+		this.opening = progress;
+		Thread t = new Thread(() -> {
+			try {
+				AudioRun r;
+				try {
+					r = CodecRegistry.open(filename, this, progress);
+				} catch(RuntimeException e){
+					//a damaged file can make a codec throw anything, the GUI still has to be told
+					throw new IOException("The file could not be read: " + e, e);
+				}
+				Platform.runLater(() -> finishOpening(progress, filename, r));
+			} catch(IOException e){
+				Platform.runLater(() -> {
+					if(progress == this.opening){
+						this.opening = null;
+						stateChanged();
+					}
+					if(!progress.isCancelled()){
+						onError.accept(e);
+					}
+				});
+			}
+		});
+		t.setName("File opening thread");
+		//don't want to halt the program from stopping while opening
+		t.setDaemon(true);
+		t.start();
+		stateChanged();
+		return progress;
+	}
+
+	/** Plays the file that was opened on another thread, if it wasn't cancelled, called on the GUI thread */
+	private void finishOpening(OpenProgress progress, File filename, AudioRun runner){
+		if(progress != this.opening || progress.isCancelled()){
+			//another file was opened, so this one isn't needed
+			runner.close();
+			return;
+		}
+		this.opening = null;
+		setRunner(filename, runner);
+	}
+
+	/** Cancels the opening of a file on another thread, if there is one */
+	public void cancelOpening(){
+		if(this.opening != null){
+			this.opening.cancel();
+			this.opening = null;
+			stateChanged();
+		}
+	}
+
+	/** Gets the progress of the file being opened on another thread, or null if there is none */
+	public OpenProgress getOpening(){
+		return this.opening;
+	}
+
+	/** Closes the current file, and makes the runner the current one */
+	private void setRunner(File filename, AudioRun runner){
 		if(this.runner != null){
-			//close old file
-			this.runner.close();
+			//close old file, it isn't the current one while closing, so the queue doesn't move on
+			AudioRun old = this.runner;
+			this.runner = null;
+			old.close();
 		}
+		this.isPlaying = false;
 		this.filename = filename.getAbsolutePath();
 		this.shortFilename = filename.getName();
-		System.out.println("Opening file: " + this.filename);
-
-		if(filename.getName().endsWith(".wav")){
-			this.runner = new WAVRunner(filename.getAbsolutePath(), this);
-		} else if(filename.getName().endsWith(".aif")){
-			this.runner = new AiffRunner(filename.getAbsolutePath(), this);
-		} else if(filename.getName().endsWith(".aiff")){
-			this.runner = new AiffRunner(filename.getAbsolutePath(), this);
-		} else if(filename.getName().endsWith(".mp3")){
-			this.runner = new MP3Runner(filename.getAbsolutePath(), this);
-			//TODO add more things
-		} else {
-			throw new IOException("Only the .mp3, .wav, .aiff, and .aif file formats are allowed at this time," + 
-					" the others are still in development.");
-		}
+		this.runner = runner;
+		//the next file plays after this one instead
+		linkNext();
 
 		stateChanged();
 	}
 
+	/**
+	 * Adds a file to play after the current one and the others added before it.
+	 * The next files are opened ahead while the one before plays, so if the next one has the same format
+	 * it starts on the same line with no gap between them.
+	 * @param filename The audio file to add.
+	 */
+	public void enqueue(File filename){
+		this.playlist.add(filename);
+	}
+
+	/** Gets the files waiting to be played after the current one */
+	public Playlist getPlaylist(){
+		return this.playlist;
+	}
+
+	/** Gets the number of files waiting to be played after the current one */
+	public int getQueueSize(){
+		return this.playlist.size();
+	}
+
+	/** Gets if there is a file to skip to, which is once the next file is done opening ahead */
+	public boolean canSkip(){
+		return this.playlist.peek() != null;
+	}
+
+	/** Sets the next file's sound player to play after the current one, if the next one is open */
+	private void linkNext(){
+		if(this.runner == null || this.runner.getSoundPlayer() == null){ return; }
+		AudioRun next = this.playlist.peek();
+		this.runner.getSoundPlayer().setNext(next == null ? null : next.getSoundPlayer());
+	}
+
+	/**
+	 * Moves on to the next file in the playlist, closing the current one.
+	 * It plays if the current one was playing.
+	 * Does nothing unless canSkip() is true, this never waits for the next file to open,
+	 * the playlist calls stateChanged when it is open, which moves on if the current one ended.
+	 */
+	public void skip(){
+		if(!canSkip()){ return; }
+		File f = this.playlist.getFile(0);
+		AudioRun next = this.playlist.take();
+		AudioRun old = this.runner;
+		this.runner = next;
+		this.filename = f.getAbsolutePath();
+		this.shortFilename = f.getName();
+		System.out.println("Playing the next file: " + this.filename);
+		if(old != null){
+			//the old one has passed the line on, is at the end, or is skipped, so it can be closed
+			old.getSoundPlayer().setNext(null);
+			old.close();
+		}
+		linkNext();
+		if(this.isPlaying){
+			//if the line was passed on this just keeps playing
+			this.runner.play();
+		}
+		stateChanged();
+	}
+
 	/**
 	 * Plays the file.
 	 * If the end was reached, this will play from the beginning.
@@ -110,22 +270,57 @@ public class Player implements Observable, AudioRun {
 		return this.shortFilename;
 	}
 
+	/**
+	 * Adds a listener that is told about changes on the GUI thread.
+	 * See addListener(InvalidationListener, Executor).
+	 */
 	@Override
 	public void addListener(InvalidationListener listener) {
-		this.observer = listener;
+		addListener(listener, Platform::runLater);
 	}
 
+	/**
+	 * Adds a listener that is told about changes on an executor.
+	 * Changes are coalesced, the listener has at most one call waiting on its executor,
+	 * so a burst of changes is one call, and a slow listener doesn't hold up the others.
+	 * The listener reads the current state when it is called.
+	 * @param listener The listener, it can be added more than once.
+	 * @param executor Runs the calls to the listener, this should not run them on the calling thread.
+	 */
+	public void addListener(InvalidationListener listener, Executor executor) {
+		this.subscribers.add(new Subscriber(listener, executor));
+	}
+
+	/** Removes a listener, it is not called after this, even if a call was waiting */
 	@Override
 	public void removeListener(InvalidationListener listener) {
-		this.observer = null;
+		for(Subscriber s : this.subscribers){
+			if(s.listener == listener){
+				s.isRemoved = true;
+				//removes the first one, like the other observables
+				this.subscribers.remove(s);
+				return;
+			}
+		}
 	}
 
 	/** Call when the state is changed of this. 
 	 * Call this on the GUI thread */
 	public void stateChanged(){
-		if(this.observer == null){ return; }
-		//call invalidated on the observer
-		this.observer.invalidated(this);
+		AudioRun next = this.playlist.peek();
+		if(next != null && this.runner != null){
+			SoundPlayer sp = next.getSoundPlayer();
+			//the next file started playing on the same line, 
+			//or the current one ended and the next needs a line of its own
+			if((sp != null && sp.hasLine()) || (this.isPlaying && this.runner.isAtEnd())){
+				skip();
+				return;
+			}
+		}
+		//tell the listeners, each one is only called once for a burst of changes
+		for(Subscriber s : this.subscribers){
+			s.changed();
+		}
 	}
 
 	/**
@@ -150,15 +345,79 @@ public class Player implements Observable, AudioRun {
 		return this.runner.getLength();
 	}
 	
+	/**
+	 * Moves playback to a frame, keeping it playing or paused.
+	 * Does nothing if there is no file open.
+	 * @param frame The index of the frame (one sample on all channels) to play next.
+	 */
+	@Override
+	public void seek(long frame) {
+		if(this.runner == null){ return; }
+		this.runner.seek(frame);
+	}
+
+	/**
+	 * Moves playback to a time, keeping it playing or paused.
+	 * Does nothing if there is no file open.
+	 * @param millis The number of milliseconds from the start of the audio.
+	 */
+	@Override
+	public void seekMillis(long millis) {
+		if(this.runner == null){ return; }
+		this.runner.seekMillis(millis);
+	}
+
+	/**
+	 * Gets the frame that this is currently at.
+	 * @return The index of the next frame to play, or -1 if there is no file open.
+	 */
+	@Override
+	public long getPositionFrames() {
+		if(this.runner == null){ return -1; }
+		return this.runner.getPositionFrames();
+	}
+
+	/**
+	 * Gets the length of the audio file in frames.
+	 * @return The number of frames, or -1 if there is no file open.
+	 */
+	@Override
+	public long getLengthFrames() {
+		if(this.runner == null){ return -1; }
+		return this.runner.getLengthFrames();
+	}
+	
+	/**
+	 * Gets how far the audio is loaded ahead of playback.
+	 * @return The index after the last frame that is loaded, or -1 if there is no file open.
+	 */
+	@Override
+	public long getBufferedFrames() {
+		if(this.runner == null){ return -1; }
+		return this.runner.getBufferedFrames();
+	}
+
+	/**
+	 * Gets the object that writes the sound of the current file to the line.
+	 * @return The sound player, or null if there is no file open.
+	 */
+	@Override
+	public SoundPlayer getSoundPlayer() {
+		if(this.runner == null){ return null; }
+		return this.runner.getSoundPlayer();
+	}
+	
 	/** Gets the info (number of channels and the sample rate) as a String */
 	public String getInfo(){
 		if(this.runner == null){return ""; }
 		return this.runner.toString();
 	}
 	
-	/** Closes the runner */
+	/** Closes the runner, and the ones opened ahead */
 	@Override
 	public void close(){
+		cancelOpening();
+		this.playlist.close();
 		if(this.runner != null){
 			this.runner.close();
 		}
@@ -171,4 +430,40 @@ public class Player implements Observable, AudioRun {
 		return runner.isAtEnd();
 	}
 
+	/**
+	 * A listener, and the executor that it is called on.
+	 */
+	private class Subscriber {
+		/** The listener */
+		private final InvalidationListener listener;
+		/** Runs the calls to the listener */
+		private final Executor executor;
+		/** If a call is waiting on the executor, so another one isn't added */
+		private final AtomicBoolean isPending;
+		/** If this was removed, a call that is waiting does nothing */
+		private volatile boolean isRemoved;
+
+		/** Creates the subscriber */
+		private Subscriber(InvalidationListener listener, Executor executor){
+			this.listener = listener;
+			this.executor = executor;
+			this.isPending = new AtomicBoolean();
+		}
+
+		/** Adds a call to the listener, unless there is one waiting already */
+		private void changed(){
+			if(this.isPending.compareAndSet(false, true)){
+				this.executor.execute(this::deliver);
+			}
+		}
+
+		/** Calls the listener, on the executor */
+		private void deliver(){
+			//cleared first, so a change during the call adds another call
+			this.isPending.set(false);
+			if(!this.isRemoved){
+				this.listener.invalidated(Player.this);
+			}
+		}
+	}
 }
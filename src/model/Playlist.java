@@ -0,0 +1,298 @@
+package model;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javafx.application.Platform;
+import runner.AudioRun;
+import runner.CodecRegistry;
+import runner.OpenProgress;
+
+/**
+ * The files to play after the current one, in order.
+ * The first few files are opened ahead on background threads, which reads their headers and seek index
+ * and starts loading their first seconds of sound, so moving on to the next file starts right away.
+ * Files are only opened ahead while the memory they hold is under a budget, and the files that
+ * move out of the ones to open ahead (when the list changes) are closed, or stopped if they are still opening.
+ * All the methods are called on the GUI thread.
+ * @author zach jones
+ *
+ */
+public class Playlist {
+
+	/** The default number of files to open ahead */
+	public static final int DEFAULT_PRELOAD_COUNT = 3;
+	/** The default most bytes of memory for the files that are opened ahead */
+	public static final long DEFAULT_MEMORY_BUDGET = 64L << 20;
+	/** The number of threads that open the files */
+	private static final int NUM_WORKERS = 2;
+
+	/** The player that the files are opened for */
+	private final Player player;
+	/** The files, the first is the one to play next */
+	private final List<Entry> entries;
+	/** The threads that open the files ahead */
+	private final ExecutorService workers;
+	/** The number of files to open ahead */
+	private final int preloadCount;
+	/** The most bytes of memory for the files that are opened ahead, the first file is always opened */
+	private final long memoryBudget;
+	/** Called when a file is done opening ahead, or null */
+	private Runnable onPreloaded;
+
+	/**
+	 * Creates an empty playlist.
+	 * @param player The player that the files are opened for.
+	 * @param preloadCount The number of files to open ahead.
+	 * @param memoryBudget The most bytes of memory for the files that are opened ahead.
+	 */
+	public Playlist(Player player, int preloadCount, long memoryBudget){
+		this.player = player;
+		this.entries = new ArrayList<>();
+		this.preloadCount = preloadCount;
+		this.memoryBudget = memoryBudget;
+		this.workers = Executors.newFixedThreadPool(NUM_WORKERS, r -> {
+			Thread t = new Thread(r);
+			t.setName("Preloading thread");
+			//don't want to halt the program from stopping while opening
+			t.setDaemon(true);
+			t.setPriority(Thread.MIN_PRIORITY);
+			return t;
+		});
+	}
+
+	/** Sets what is called (on the GUI thread) when a file is done opening ahead */
+	public void setOnPreloaded(Runnable onPreloaded){
+		this.onPreloaded = onPreloaded;
+	}
+
+	/** Adds a file to the end */
+	public void add(File file){
+		this.entries.add(new Entry(file));
+		schedule();
+	}
+
+	/** Adds a file at an index, 0 is played next */
+	public void add(int index, File file){
+		this.entries.add(index, new Entry(file));
+		schedule();
+	}
+
+	/** Removes the file at the index, closing it if it was opened ahead */
+	public void remove(int index){
+		this.entries.remove(index).cancel();
+		schedule();
+	}
+
+	/** Moves the file at an index to another index */
+	public void move(int from, int to){
+		this.entries.add(to, this.entries.remove(from));
+		schedule();
+	}
+
+	/** Removes all of the files, closing the ones that were opened ahead */
+	public void clear(){
+		for(Entry e : this.entries){
+			e.cancel();
+		}
+		this.entries.clear();
+	}
+
+	/** Gets the number of files */
+	public int size(){
+		return this.entries.size();
+	}
+
+	/** Gets if there are no files */
+	public boolean isEmpty(){
+		return this.entries.isEmpty();
+	}
+
+	/** Gets the file at an index, 0 is played next */
+	public File getFile(int index){
+		return this.entries.get(index).file;
+	}
+
+	/**
+	 * Gets the next file if it is done opening ahead.
+	 * @return The runner, which is still in the playlist, or null if there is none or it is not open yet.
+	 */
+	public AudioRun peek(){
+		if(this.entries.isEmpty()){ return null; }
+		return this.entries.get(0).getRunner();
+	}
+
+	/**
+	 * Removes the next file, if it is done opening ahead.
+	 * This never waits for a file or opens one, so it can be called on the GUI thread.
+	 * @return The runner for the file, the caller closes it, or null if the next file isn't open yet.
+	 */
+	public AudioRun take(){
+		AudioRun r = peek();
+		if(r == null){
+			return null;
+		}
+		this.entries.remove(0);
+		//the next ones move up, so they can start opening
+		schedule();
+		return r;
+	}
+
+	/**
+	 * Starts opening the files that should be opened ahead, and cancels the rest.
+	 * The files are opened in order while the ones that are open are under the memory budget.
+	 */
+	private void schedule(){
+		long used = 0;
+		for(int i = 0; i < this.entries.size(); i++){
+			Entry e = this.entries.get(i);
+			//the next file is always opened, so it can play with no gap
+			boolean wanted = i == 0 || (i < preloadCount && used < memoryBudget);
+			if(!wanted){
+				e.cancel();
+				continue;
+			}
+			e.start();
+			//a file that is still opening counts once it is open, this is called again then
+			used += e.getMemoryBytes();
+		}
+	}
+
+	/** Called on the GUI thread when a file is done opening ahead */
+	private void preloaded(){
+		//the files that failed are skipped
+		for(int i = this.entries.size() - 1; i >= 0; i--){
+			Entry e = this.entries.get(i);
+			IOException error = e.getError();
+			if(error != null){
+				System.out.println("Unable to open " + e.file.getName() + ": " + error.getMessage());
+				this.entries.remove(i);
+			}
+		}
+		//the memory used is known now, so the budget is checked again
+		schedule();
+		if(this.onPreloaded != null){
+			this.onPreloaded.run();
+		}
+	}
+
+	/** Closes all the files that were opened ahead, and stops the threads */
+	public void close(){
+		clear();
+		this.workers.shutdownNow();
+	}
+
+	/**
+	 * A file in the playlist, and the runner that was opened ahead for it.
+	 */
+	private class Entry {
+		/** The file */
+		private final File file;
+		/** The opening of the file on a worker, null if it wasn't started */
+		private Future<?> preload;
+		/** The runner that was opened, null until it is open */
+		private AudioRun runner;
+		/** The error from opening, null if there was none */
+		private IOException error;
+		/** If this is no longer opened ahead, the runner is closed as soon as it is open */
+		private boolean isCancelled;
+		/** The number of times this was started, so an opening that was cancelled and is still running is thrown away */
+		private int generation;
+		/** The progress of the opening that was started last, cancelled with this */
+		private OpenProgress progress;
+
+		/** Creates an entry that isn't opened */
+		private Entry(File file){
+			this.file = file;
+		}
+
+		/** Starts opening the file on a worker, if it isn't open or opening */
+		private synchronized void start(){
+			if(this.preload != null && !this.isCancelled){
+				return;
+			}
+			this.isCancelled = false;
+			this.error = null;
+			this.generation++;
+			int g = this.generation;
+			OpenProgress p = new OpenProgress(this.file.getName());
+			this.progress = p;
+			this.preload = workers.submit(() -> open(g, p));
+		}
+
+		/** Opens the file, on a worker, g is the generation it was started in */
+		private void open(int g, OpenProgress p){
+			AudioRun r;
+			try {
+				try {
+					r = CodecRegistry.open(this.file, player, p);
+				} catch(RuntimeException e){
+					//a damaged file can make a codec throw anything, it is skipped like any other error
+					throw new IOException("The file could not be read: " + e, e);
+				}
+			} catch(IOException e){
+				synchronized(this){
+					//a cancelled opening isn't an error
+					if(g == this.generation && !p.isCancelled()){
+						this.error = e;
+					}
+				}
+				Platform.runLater(Playlist.this::preloaded);
+				return;
+			}
+			synchronized(this){
+				if(!this.isCancelled && g == this.generation){
+					this.runner = r;
+					r = null;
+				}
+			}
+			if(r != null){
+				//closing calls back to the player, which is on the GUI thread
+				Platform.runLater(r::close);
+				return;
+			}
+			Platform.runLater(Playlist.this::preloaded);
+		}
+
+		/** Gets the runner if it is open, otherwise null */
+		private synchronized AudioRun getRunner(){
+			return this.runner;
+		}
+
+		/** Gets the error from opening, null if there was none */
+		private synchronized IOException getError(){
+			return this.error;
+		}
+
+		/** Gets the memory held by the runner, 0 if it isn't open */
+		private long getMemoryBytes(){
+			AudioRun r = getRunner();
+			if(r == null || r.getSoundPlayer() == null){ return 0; }
+			return r.getSoundPlayer().getMemoryBytes();
+		}
+
+		/** Stops opening the file, and closes it if it was opened */
+		private void cancel(){
+			AudioRun r;
+			synchronized(this){
+				if(this.preload == null || this.isCancelled){
+					return;
+				}
+				this.isCancelled = true;
+				//it isn't started if it was waiting for a worker, otherwise it stops reading the file
+				this.preload.cancel(false);
+				this.progress.cancel();
+				r = this.runner;
+				this.runner = null;
+			}
+			if(r != null){
+				//closing calls back to the player, which could be changing the playlist now
+				Platform.runLater(r::close);
+			}
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package model;
+
+/**
+ * A fixed-size circular buffer of bytes that is passed from one thread to another.
+ * Exactly one thread may write and exactly one other thread may read,
+ * which lets this work without any locks: each side only ever moves its own position.
+ * @author zach jones
+ *
+ */
+public class RingBuffer {
+
+	/** The bytes in the buffer, the length is a power of 2 */
+	private final byte[] data;
+	/** The mask to turn a position into an index in data */
+	private final int mask;
+	/** The total number of bytes ever written, only changed by the writing thread */
+	private volatile long writePos;
+	/** The total number of bytes ever read, only changed by the reading thread */
+	private volatile long readPos;
+
+	/**
+	 * Creates an empty ring buffer.
+	 * @param minCapacity The minimum number of bytes this can hold,
+	 * this is rounded up to the next power of 2.
+	 */
+	public RingBuffer(int minCapacity){
+		if(minCapacity <= 0 || minCapacity > (1 << 30)){
+			throw new IllegalArgumentException("Invalid ring buffer capacity: " + minCapacity);
+		}
+		int capacity = Integer.highestOneBit(minCapacity);
+		if(capacity < minCapacity){
+			capacity <<= 1;
+		}
+		this.data = new byte[capacity];
+		this.mask = capacity - 1;
+	}
+
+	/** Gets the number of bytes that this can hold */
+	public int getCapacity(){
+		return data.length;
+	}
+
+	/** Gets the number of bytes that can be read right now */
+	public int available(){
+		return (int)(writePos - readPos);
+	}
+
+	/** Gets the number of bytes that can be written right now */
+	public int space(){
+		return data.length - available();
+	}
+
+	/**
+	 * Copies as many bytes as there is space for into the buffer.
+	 * Only call this from the writing thread.
+	 * @param src The array to copy from.
+	 * @param offset The index in src to start at.
+	 * @param len The maximum number of bytes to write.
+	 * @return The number of bytes written, 0 if the buffer is full.
+	 */
+	public int write(byte[] src, int offset, int len){
+		long pos = this.writePos;
+		len = Math.min(len, data.length - (int)(pos - this.readPos));
+		int index = (int)pos & mask;
+		//the write can wrap around the end of the array
+		int first = Math.min(len, data.length - index);
+		System.arraycopy(src, offset, data, index, first);
+		System.arraycopy(src, offset + first, data, 0, len - first);
+		//publish the bytes to the reader
+		this.writePos = pos + len;
+		return len;
+	}
+
+	/**
+	 * Copies as many bytes as are available out of the buffer.
+	 * Only call this from the reading thread.
+	 * @param dst The array to copy into.
+	 * @param offset The index in dst to start at.
+	 * @param len The maximum number of bytes to read.
+	 * @return The number of bytes read, 0 if the buffer is empty.
+	 */
+	public int read(byte[] dst, int offset, int len){
+		long pos = this.readPos;
+		len = Math.min(len, (int)(this.writePos - pos));
+		int index = (int)pos & mask;
+		int first = Math.min(len, data.length - index);
+		System.arraycopy(data, index, dst, offset, first);
+		System.arraycopy(data, 0, dst, offset + first, len - first);
+		//give the space back to the writer
+		this.readPos = pos + len;
+		return len;
+	}
+
+	/**
+	 * Throws away everything in the buffer.
+	 * This is called from the writing thread, and only while the reading thread is not reading.
+	 */
+	public void clear(){
+		this.readPos = this.writePos;
+	}
+}
@@ -1,6 +1,11 @@
 package model;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
 import javax.sound.sampled.LineUnavailableException;
 import javax.sound.sampled.SourceDataLine;
 
@@ -8,149 +13,466 @@ import javafx.application.Platform;
 import runner.AudioRun;
 
 public class SoundPlayer implements AudioRun {
-	/** If this is closed*/
-	private boolean isClosed;
-	/** The frames of audio, each frame is a byte array */
-	private byte[][] frames;
+	/** The default number of milliseconds of audio sent to the line in each write */
+	public static final int DEFAULT_PERIOD_MILLIS = 10;
+	/** The number of periods that the line's buffer can hold */
+	private static final int LINE_PERIODS = 8;
+	/** The time to wait for frames that are still loading, the sources don't signal when they load (5 ms) */
+	private static final long LOADING_WAIT_NANOS = 5_000_000;
+	/** The milliseconds of audio that must be loaded ahead before playback starts, or starts again after a stall */
+	public static final int START_THRESHOLD_MILLIS = 50;
+	/** The state when paused or stopped, the thread waits */
+	private static final int PAUSED = 0;
+	/** The state when playing, the thread writes to the line */
+	private static final int PLAYING = 1;
+	/** The state when closed, this is never left */
+	private static final int CLOSED = 2;
+	/** The number of bits of the transport word that hold the cursor, the state is in the bits above */
+	private static final int CURSOR_BITS = 62;
+	/** The bits of the transport word that hold the cursor */
+	private static final long CURSOR_MASK = (1L << CURSOR_BITS) - 1;
+	
+	/** The frames of audio */
+	private PCMSource frames;
 	/** the number of samples per second */
 	private float sampleRate;
-	/** the cursor location, the current frame */
-	private int cursor;
-	/** if this is paused */
-	private boolean isPaused;
-	/** The *.* file runner*/
+	/** 
+	 * The state (PAUSED, PLAYING or CLOSED) and the cursor location (the current frame) in one word,
+	 * so each command changes both at once, and playback only moves the cursor if no command changed it.
+	 * Every change is a compare and set, so commands from the GUI thread never wait for playback or get lost.
+	 */
+	private final AtomicLong transport;
+	/** The *.* file runner, told about changes, or null if nothing listens */
 	private AudioRun runner;
+	/** The number of frames sent to the line in each write */
+	private int periodFrames;
+	/** The format of the frames */
+	private final AudioFormat format;
+	/** The sound to play on the same line after this one, or null */
+	private volatile SoundPlayer next;
+	/** 
+	 * If this has the line, once it is played or the sound before passes the line on.
+	 * Claimed with a compare and set, so the sound-playing thread of the sound before never waits for play().
+	 */
+	private final AtomicBoolean hasLine;
+	/** The thread that writes to the line while this has it, null before it has the line */
+	private volatile Thread thread;
+	/** The System.nanoTime() of the play() that resumed playback, 0 once the thread has woken up for it */
+	private volatile long resumeRequested;
+	/** The nanoseconds between the last resume and the thread writing again, -1 before the first */
+	private volatile long resumeLatency;
+	/** If a call to stateChanged is waiting on the GUI thread, so playback only adds one at a time */
+	private final AtomicBoolean isChangePending;
+	/** The number of frames that must be loaded ahead before playback starts */
+	private final long startFrames;
+	/** The number of times that playback caught up with the loading and had to wait */
+	private final AtomicLong stalls;
 	
 	
+	/**
+	 * Constructor for a device to play the raw sound data, 
+	 * writing DEFAULT_PERIOD_MILLIS of audio at a time.
+	 * @param frames The source that holds all the frames of audio.
+	 * @param sampleRate The number of samples per second as an int.
+	 * @param sampleBitSize The number of bits per sample as an int.
+	 * @param numChannels The number of channels of sound (1 is mono, 2 stereo, ...)
+	 * @param bigEndian Whether the data is big endian (true), or little endian (false)
+	 * @param runner The runner that constructed this object, or null if nothing is told about changes
+	 */
+	public SoundPlayer(PCMSource frames, float sampleRate, int sampleBitSize, int numChannels, boolean bigEndian, AudioRun runner){
+		this(frames, sampleRate, sampleBitSize, numChannels, bigEndian, runner, DEFAULT_PERIOD_MILLIS);
+	}
+	
 	/**
 	 * Constructor for a device to play the raw sound data.
-	 * @param frames The byte 2-d array that each frame is a byte 1-d array.
+	 * @param frames The source that holds all the frames of audio.
 	 * @param sampleRate The number of samples per second as an int.
 	 * @param sampleBitSize The number of bits per sample as an int.
 	 * @param numChannels The number of channels of sound (1 is mono, 2 stereo, ...)
 	 * @param bigEndian Whether the data is big endian (true), or little endian (false)
-	 * @param runner The runner that constructed this object
+	 * @param runner The runner that constructed this object, or null if nothing is told about changes
+	 * @param periodMillis The number of milliseconds of audio to send to the line in each write.
+	 * Smaller periods respond to pause sooner, larger periods use less CPU.
 	 */
-	public SoundPlayer(byte[][] frames, float sampleRate, int sampleBitSize, int numChannels, boolean bigEndian, AudioRun runner){
+	public SoundPlayer(PCMSource frames, float sampleRate, int sampleBitSize, int numChannels, boolean bigEndian, 
+			AudioRun runner, int periodMillis){
 		this.runner = runner;
-		this.isClosed = false;
 		this.frames = frames;
-		this.cursor = 0;
-		this.isPaused = true;
+		this.transport = new AtomicLong(pack(PAUSED, 0));
 		this.sampleRate = sampleRate;
-		
-		Thread t = new Thread(() -> {
-			try {
-				AudioFormat af = new AudioFormat(sampleRate, sampleBitSize, numChannels, true, bigEndian);
-				SourceDataLine sdl = AudioSystem.getSourceDataLine(af);
-				sdl.open();
-				sdl.start();
-				while(!isClosed){
-					while(this.isPaused && !isClosed){
-						sleep(50);
-					}
-					
-					//write the data
-					//blocks for 1/sampleRate of a second
-					sdl.write(frames[cursor], 0, frames[cursor].length); 
-					this.cursor ++;
-					
-					//update UI if needed 1 time every second
-					if(this.cursor % (int)this.sampleRate == 0){
-						Platform.runLater(() -> {
-							this.stateChanged();
-						});
+		this.format = new AudioFormat(sampleRate, sampleBitSize, numChannels, true, bigEndian);
+		this.periodFrames = Math.max(1, (int)(sampleRate * periodMillis / 1000));
+		this.hasLine = new AtomicBoolean();
+		this.resumeLatency = -1;
+		this.isChangePending = new AtomicBoolean();
+		this.startFrames = (long)(sampleRate * START_THRESHOLD_MILLIS / 1000);
+		this.stalls = new AtomicLong();
+		//the line is opened when this is first played, so a track can be opened ahead of time
+	}
+	
+	/**
+	 * Sets the sound to play right after this one ends.
+	 * If it has the same format, it is played on the same line with no gap, and without opening a new line.
+	 * When it starts, stateChanged is called on this, and next.hasLine() is true.
+	 * @param next The sound to play next, which should not be played yet, or null for none.
+	 */
+	public void setNext(SoundPlayer next){
+		this.next = next;
+		//the thread could be waiting at the end for a next sound
+		wake();
+	}
+	
+	/** Gets if this has the line, from being played or from the sound before it ending */
+	public boolean hasLine(){
+		return this.hasLine.get();
+	}
+	
+	/** 
+	 * Takes the line from the sound before, if this can play on it.
+	 * @param format The format of the line.
+	 * @return true if this now has the line and is playing.
+	 */
+	private boolean takeLine(AudioFormat format){
+		if(!this.format.matches(format) || !this.hasLine.compareAndSet(false, true)){
+			return false;
+		}
+		long old = this.transport.getAndUpdate(w -> stateOf(w) == CLOSED ? w : pack(PLAYING, cursorOf(w)));
+		if(stateOf(old) == CLOSED){
+			//closing can't be undone, so this never needs a line
+			return false;
+		}
+		this.thread = Thread.currentThread();
+		return true;
+	}
+	
+	/** Makes a transport word from the state and the cursor */
+	private static long pack(int state, long cursor){
+		return ((long)state << CURSOR_BITS) | cursor;
+	}
+	
+	/** Gets the state from a transport word */
+	private static int stateOf(long word){
+		return (int)(word >>> CURSOR_BITS);
+	}
+	
+	/** Gets the cursor from a transport word */
+	private static long cursorOf(long word){
+		return word & CURSOR_MASK;
+	}
+	
+	/**
+	 * Moves the cursor after playback wrote frames, unless a command moved it during the write.
+	 * A pause or close during the write is kept, with the cursor after the frames.
+	 * @param start The cursor before the write.
+	 * @param count The number of frames written.
+	 * @return true if the cursor was moved, false if a command moved it.
+	 */
+	private boolean advance(long start, int count){
+		while(true){
+			long w = this.transport.get();
+			if(cursorOf(w) != start){
+				return false;
+			}
+			if(this.transport.compareAndSet(w, pack(stateOf(w), start + count))){
+				return true;
+			}
+		}
+	}
+	
+	/** Wakes the thread that writes to the line, if it is waiting, so it sees the change right away */
+	private void wake(){
+		Thread t = this.thread;
+		if(t != null){
+			LockSupport.unpark(t);
+		}
+	}
+	
+	/**
+	 * Gets a line from the sound system that can play the format, it isn't open yet.
+	 * Called on the sound-playing thread, a test can give a line that doesn't make sound.
+	 * @param format The format of the frames.
+	 * @return The line.
+	 * @throws LineUnavailableException If there is no line for the format.
+	 */
+	protected SourceDataLine getLine(AudioFormat format) throws LineUnavailableException {
+		return AudioSystem.getSourceDataLine(format);
+	}
+	
+	/** Opens the line and starts the thread that writes to it, only called once */
+	private void startLine(){
+		Thread t = new Thread(this::writeLine);
+		t.setName("Sound-playing thread");
+		this.thread = t;
+		t.start();
+	}
+	
+	/** 
+	 * The loop of the sound-playing thread, writes this sound to the line,
+	 * then the sounds set with setNext, until the one playing is closed.
+	 */
+	private void writeLine(){
+		//the sound that is playing, the line is passed on to the next sound at the end
+		SoundPlayer sp = this;
+		try {
+			SourceDataLine sdl = getLine(format);
+			int frameSize = frames.getFrameSize();
+			//the line only needs to hold a few periods, this keeps pausing responsive
+			sdl.open(format, this.periodFrames * frameSize * LINE_PERIODS);
+			sdl.start();
+			//holds the period that is being written
+			byte[] period = new byte[this.periodFrames * frameSize];
+			//if playback is waiting for startFrames to be loaded, at the start, after a seek, or after a stall
+			boolean isBuffering = true;
+			//the cursor after the last period that was played, if the cursor isn't here it was moved
+			long expected = -1;
+			while(true){
+				long word = sp.transport.get();
+				if(stateOf(word) == CLOSED){
+					break;
+				}
+				if(stateOf(word) == PAUSED){
+					//parks until play() or close() wakes this, using no CPU while paused
+					LockSupport.park(sp);
+					continue;
+				}
+				long requested = sp.resumeRequested;
+				if(requested != 0){
+					sp.resumeLatency = System.nanoTime() - requested;
+					sp.resumeRequested = 0;
+				}
+				
+				//write the data
+				//blocks until the line has room for the whole period
+				long start = cursorOf(word);
+				if(start != expected){
+					//a seek, or the next sound, so the first read isn't a stall
+					isBuffering = true;
+				}
+				int count = sp.frames.read(start, period, 0, Math.min(sp.periodFrames, this.periodFrames));
+				if(count == 0 && start < sp.frames.getNumFrames()){
+					//the data isn't loaded yet, wait for it instead of playing garbage
+					if(!isBuffering){
+						//caught up with the loading
+						sp.stalls.incrementAndGet();
+						isBuffering = true;
 					}
-					
-					//update UI if at the end, only once
-					if(this.cursor >= frames.length){
-						Platform.runLater(() -> {
-							this.stateChanged();
-						});
+					LockSupport.parkNanos(sp, LOADING_WAIT_NANOS);
+					continue;
+				}
+				if(isBuffering){
+					//hold this period until a little more is loaded, so playback doesn't stall again right away
+					//stops waiting if a command changes the state or cursor
+					while(sp.frames.getBufferedEnd(start + count) 
+							< Math.min(sp.frames.getNumFrames(), start + count + sp.startFrames) 
+							&& sp.transport.get() == word){
+						LockSupport.parkNanos(sp, LOADING_WAIT_NANOS);
 					}
-					
-					//at end, sleep until closed, or changed cursor position.
-					while(this.cursor >= frames.length && !isClosed){
-						sleep(50);
+					isBuffering = false;
+				}
+				sdl.write(period, 0, count * frameSize); 
+				//don't move the cursor if stop() or seek() was called during the write
+				if(!sp.advance(start, count)){
+					//throw away the audio from before the seek that is still in the line
+					sdl.flush();
+				}
+				expected = start + count;
+				long now = cursorOf(sp.transport.get());
+				
+				//the GUI reads the position itself, it is only told when the state changes
+				SoundPlayer current = sp;
+				
+				//at the end, go straight on to the next sound if it can use the line
+				SoundPlayer following = sp.next;
+				if(now >= sp.frames.getNumFrames() && following != null && following.takeLine(format)){
+					sp = following;
+					current.stateChangedLater();
+					continue;
+				}
+				
+				//update UI if at the end, only once
+				if(now >= sp.frames.getNumFrames()){
+					current.stateChangedLater();
+				}
+				
+				//at end, park until closed, changed cursor position, or there is a next sound to play
+				while(cursorOf(word = sp.transport.get()) >= sp.frames.getNumFrames() && stateOf(word) != CLOSED){
+					following = sp.next;
+					if(following != null && following.takeLine(format)){
+						sp = following;
+						current.stateChangedLater();
+						break;
 					}
+					LockSupport.park(sp);
 				}
-				sdl.drain();
-				sdl.stop();
-				System.out.println("Sound-playing thread finished normally.");
-			} catch(LineUnavailableException e){
-				System.out.println(e);
 			}
-		});
-		t.setName("Sound-playing thread");
-		t.start();
+			sdl.drain();
+			sdl.stop();
+			sdl.close();
+			System.out.println("Sound-playing thread finished normally.");
+		} catch(LineUnavailableException e){
+			System.out.println(e);
+		}
 	}
 	
 	
 	@Override
 	public void play() {
-		//reset to beginning if at end
-		if(this.cursor >= frames.length){
-			this.cursor = 0; 
-		} else {
-			this.isPaused = false;
+		long requested = System.nanoTime();
+		long numFrames = frames.getNumFrames();
+		//play, and reset to beginning if at end
+		long old = this.transport.getAndUpdate(w -> stateOf(w) == CLOSED ? w 
+				: pack(PLAYING, cursorOf(w) >= numFrames ? 0 : cursorOf(w)));
+		if(stateOf(old) == CLOSED){
+			return;
+		}
+		if(stateOf(old) == PAUSED){
+			this.resumeRequested = requested;
 		}
+		//if the sound before passed the line on first, its thread is already playing this
+		if(this.hasLine.compareAndSet(false, true)){
+			startLine();
+		}
+		wake();
 		this.stateChanged();
 	}
 
 	@Override
 	public void pause() {
-		//pause this
-		this.isPaused = true;
+		//pause this, if it is playing
+		this.transport.getAndUpdate(w -> stateOf(w) == PLAYING ? pack(PAUSED, cursorOf(w)) : w);
 		this.stateChanged();
 	}
 
 	@Override
 	public void stop() {
 		//pause and move to beginning
-		this.isPaused = true;
-		this.cursor = 0;
+		this.transport.getAndUpdate(w -> stateOf(w) == CLOSED ? w : pack(PAUSED, 0));
+		wake();
 		this.stateChanged();
 	}
 
 	@Override
 	public void close() {
 		//mark as closed, terminating the loop in the secondary thread.
-		this.isClosed = true;
+		this.transport.getAndUpdate(w -> pack(CLOSED, cursorOf(w)));
+		wake();
 		this.stateChanged();
 	}
 
 	@Override
 	public int getTime() {
 		//the cursor / the total number of frames
-		return (int) (this.cursor / this.sampleRate);
+		return (int) (getPositionFrames() / this.sampleRate);
 	}
 
 	@Override
 	public int getLength() {
 		//the total number of frames / frames per second
-		return (int) (this.frames.length / this.sampleRate);
+		return (int) (this.frames.getNumFrames() / this.sampleRate);
 	}
 
-	/** Calls Thread.sleep(mills) in a try.. catch block for convenience */
-	private void sleep(int mills){
-		try {
-			Thread.sleep(mills);
-		} catch (InterruptedException e) {
-			e.printStackTrace();
-		}
+	@Override
+	public void seek(long frame) {
+		//only the cursor moves, the source finds the frame when it is next read
+		long cursor = Math.max(0, Math.min(frame, this.frames.getNumFrames()));
+		this.transport.getAndUpdate(w -> stateOf(w) == CLOSED ? w : pack(stateOf(w), cursor));
+		wake();
+		this.stateChanged();
 	}
 
+	@Override
+	public void seekMillis(long millis) {
+		//rounded down to the frame that is playing at that time
+		seek((long)(millis * (double)this.sampleRate / 1000));
+	}
+
+	@Override
+	public long getPositionFrames() {
+		return cursorOf(this.transport.get());
+	}
+
+	@Override
+	public long getLengthFrames() {
+		return this.frames.getNumFrames();
+	}
+
+	@Override
+	public long getBufferedFrames() {
+		return this.frames.getBufferedEnd(getPositionFrames());
+	}
+
+	/** Gets the source of the frames that this plays */
+	public PCMSource getSource(){
+		return this.frames;
+	}
+
+	/** Gets the format of the frames, which are always signed */
+	public AudioFormat getFormat(){
+		return this.format;
+	}
+
+	/** Gets the number of times that playback caught up with the loading, and waited for it */
+	public long getStallCount(){
+		return this.stalls.get();
+	}
+
+	/** Gets about how many bytes of memory the frames hold, see PCMSource.getMemoryBytes() */
+	public long getMemoryBytes(){
+		return this.frames.getMemoryBytes();
+	}
+
+	@Override
+	public SoundPlayer getSoundPlayer() {
+		return this;
+	}
+
+	/**
+	 * Gets how long the last resume took, from play() to the sound-playing thread writing again.
+	 * @return The number of nanoseconds, or -1 if this was not resumed yet.
+	 */
+	public long getResumeLatencyNanos(){
+		return this.resumeLatency;
+	}
+
+
+	/** 
+	 * Calls stateChanged on the GUI thread, for the sound-playing thread.
+	 * Only one call waits at a time, so playback never floods the GUI thread, and it never waits for it.
+	 */
+	private void stateChangedLater(){
+		if(this.runner != null && this.isChangePending.compareAndSet(false, true)){
+			Platform.runLater(() -> {
+				this.isChangePending.set(false);
+				this.stateChanged();
+			});
+		}
+	}
 
 	@Override
 	public void stateChanged() {
 		//call the state changed of the runner
-		runner.stateChanged();
+		if(runner != null){
+			runner.stateChanged();
+		}
 	}
 
 
 	@Override
 	public boolean isAtEnd() {
 		//return true if this is at the end of the file
-		return this.cursor == this.frames.length;
+		return getPositionFrames() == this.frames.getNumFrames();
+	}
+
+	/**
+	 * Checks if the sound system has a line that can play the format.
+	 * @param sampleRate The number of samples per second.
+	 * @param sampleBitSize The number of bits per sample.
+	 * @param numChannels The number of channels of sound.
+	 * @param bigEndian Whether the data is big endian (true), or little endian (false)
+	 * @return true iff a SoundPlayer could be made with these values.
+	 */
+	public static boolean isSupported(float sampleRate, int sampleBitSize, int numChannels, boolean bigEndian){
+		AudioFormat af = new AudioFormat(sampleRate, sampleBitSize, numChannels, true, bigEndian);
+		return AudioSystem.isLineSupported(new DataLine.Info(SourceDataLine.class, af));
 	}
 }
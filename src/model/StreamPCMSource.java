@@ -0,0 +1,282 @@
+package model;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A source of PCM data that is loaded or decoded on its own thread, a little ahead of playback.
+ * The loading thread fills a RingBuffer that holds a fixed amount of audio, and waits when it is full,
+ * so the memory used does not depend on the length of the file.
+ * If playback catches up with the loading, reads return fewer frames (an underrun) instead of silence.
+ * The number of frames can be an estimate, then it is raised while the producer makes more,
+ * and set to the frames produced at the end, or by setNumFrames when it is known.
+ * @author zach jones
+ *
+ */
+public class StreamPCMSource implements PCMSource {
+
+	/** The default number of milliseconds of audio to load ahead of playback */
+	public static final int DEFAULT_BUFFER_MILLIS = 2000;
+	/** The number of frames the loading thread asks for at a time */
+	private static final int CHUNK_FRAMES = 4096;
+	/** The value of seekTarget when there is no seek waiting */
+	private static final long NO_SEEK = -1;
+
+	/**
+	 * Loads or decodes the frames of audio, in order.
+	 * All the methods are only called on the loading thread.
+	 */
+	public interface Producer {
+		/**
+		 * Moves the producer so the next frame produced is the frame.
+		 * @param frame The index of the frame to produce next.
+		 * @throws IOException If there is an error moving in the file.
+		 */
+		public void seek(long frame) throws IOException;
+		/**
+		 * Produces the next frames of audio.
+		 * @param dst The array to put the frames into.
+		 * @param offset The index in dst to start at.
+		 * @param count The maximum number of frames to produce.
+		 * @return The number of frames produced, 0 at the end of the audio.
+		 * @throws IOException If there is an error reading or decoding.
+		 */
+		public int produce(byte[] dst, int offset, int count) throws IOException;
+		/**
+		 * Releases the file handles.
+		 * @throws IOException If there is an error closing the file.
+		 */
+		public void close() throws IOException;
+	}
+
+	/** The buffer between the loading thread and playback */
+	private final RingBuffer ring;
+	/** The thing that makes the frames */
+	private final Producer producer;
+	/** The thread that runs the producer */
+	private final Thread thread;
+	/** The number of bytes in a frame (one sample on all channels) */
+	private final int frameSize;
+	/** The total number of frames of audio, this is cut short if the producer ends early */
+	private volatile long numFrames;
+	/** If numFrames is the most that the producer makes, false if it is an estimate */
+	private boolean isExactLength;
+	/** The index of the next frame in the ring buffer to be read */
+	private volatile long position;
+	/** The frame that the loading started from, after the last seek */
+	private volatile long loadStart;
+	/** The frame that playback wants to move to, or NO_SEEK */
+	private final AtomicLong seekTarget;
+	/** The number of times that playback caught up with the loading */
+	private final AtomicLong underruns;
+	/** If the last read found nothing loaded, only used by playback */
+	private boolean isStarved;
+	/** If this is closed */
+	private volatile boolean isClosed;
+	/** If the loading thread stopped on an error, nothing more is loaded */
+	private volatile boolean isFailed;
+
+	/**
+	 * Creates the source, and starts loading from the first frame.
+	 * @param producer The producer of the frames.
+	 * @param numFrames The total number of frames the producer makes.
+	 * @param frameSize The number of bytes in each frame.
+	 * @param bufferFrames The number of frames to load ahead of playback.
+	 * @param name The name of the loading thread.
+	 */
+	public StreamPCMSource(Producer producer, long numFrames, int frameSize, int bufferFrames, String name){
+		this(producer, numFrames, true, frameSize, bufferFrames, name);
+	}
+
+	/**
+	 * Creates the source, and starts loading from the first frame.
+	 * @param producer The producer of the frames.
+	 * @param numFrames The total number of frames the producer makes.
+	 * @param isExactLength If false, numFrames is an estimate, and the producer is read until it ends.
+	 * @param frameSize The number of bytes in each frame.
+	 * @param bufferFrames The number of frames to load ahead of playback.
+	 * @param name The name of the loading thread.
+	 */
+	public StreamPCMSource(Producer producer, long numFrames, boolean isExactLength, int frameSize, 
+			int bufferFrames, String name){
+		this.producer = producer;
+		this.numFrames = numFrames;
+		this.isExactLength = isExactLength;
+		this.frameSize = frameSize;
+		this.ring = new RingBuffer(Math.max(bufferFrames, CHUNK_FRAMES) * frameSize);
+		this.position = 0;
+		this.loadStart = 0;
+		this.seekTarget = new AtomicLong(NO_SEEK);
+		this.underruns = new AtomicLong();
+		this.isClosed = false;
+
+		this.thread = new Thread(this::load);
+		this.thread.setName(name);
+		//don't want to halt the program from stopping while loading
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/** The loop of the loading thread, runs until this is closed */
+	private void load(){
+		byte[] chunk = new byte[CHUNK_FRAMES * frameSize];
+		boolean atEnd = false;
+		//the index of the next frame the producer makes
+		long next = 0;
+		try {
+			while(!isClosed){
+				long target = seekTarget.get();
+				if(target != NO_SEEK){
+					//playback is not reading while there is a seek waiting
+					producer.seek(target);
+					ring.clear();
+					this.position = target;
+					this.loadStart = target;
+					next = target;
+					atEnd = false;
+					seekTarget.compareAndSet(target, NO_SEEK);
+					continue;
+				}
+				if(atEnd){
+					//nothing to do until a seek or close
+					LockSupport.park(this);
+					continue;
+				}
+
+				int count = producer.produce(chunk, 0, CHUNK_FRAMES);
+				if(count == 0){
+					//the file could be shorter than the header said
+					reachedEnd(next);
+					atEnd = true;
+					continue;
+				}
+				next += count;
+				loaded(next);
+				//push the whole chunk, waiting for playback to make space
+				int len = count * frameSize;
+				int written = 0;
+				while(written < len && !isClosed && seekTarget.get() == NO_SEEK){
+					int num = ring.write(chunk, written, len - written);
+					if(num == 0){
+						LockSupport.park(this);
+					}
+					written += num;
+				}
+			}
+		} catch(IOException | RuntimeException e){
+			//a damaged file can make the decoder throw anything, and playback would wait for it forever
+			System.out.println("Error loading file: " + e);
+			//let playback finish with what was loaded
+			this.numFrames = Math.min(this.numFrames, next);
+			this.isFailed = true;
+		} finally {
+			try {
+				producer.close();
+			} catch (IOException e) {
+				System.err.println("Unable to close the file: " + e.getMessage());
+			}
+		}
+	}
+
+	/** Raises an estimated length past the frames loaded, so playback waits for the rest instead of ending */
+	private synchronized void loaded(long next){
+		if(!isExactLength && next >= this.numFrames){
+			this.numFrames = next + 1;
+		}
+	}
+
+	/** Sets the length to the frames produced, when the producer ends */
+	private synchronized void reachedEnd(long next){
+		this.numFrames = isExactLength ? Math.min(this.numFrames, next) : next;
+		this.isExactLength = true;
+	}
+
+	/**
+	 * Sets the exact number of frames, when it is found after this is created, such as by scanning the whole file.
+	 * @param numFrames The total number of frames the producer makes.
+	 */
+	public synchronized void setNumFrames(long numFrames){
+		this.numFrames = numFrames;
+		this.isExactLength = true;
+	}
+
+	@Override
+	public int getFrameSize() {
+		return this.frameSize;
+	}
+
+	@Override
+	public long getNumFrames() {
+		return this.numFrames;
+	}
+
+	@Override
+	public int read(long frame, byte[] dst, int offset, int count) {
+		if(frame >= this.numFrames){ return 0; }
+		if(isFailed && (frame != this.position || seekTarget.get() != NO_SEEK)){
+			//nothing is loaded from anywhere else, so playback ends here
+			this.numFrames = Math.min(this.numFrames, frame);
+			return 0;
+		}
+		if(seekTarget.get() != NO_SEEK){
+			//still moving, nothing to read yet
+			return 0;
+		}
+		if(frame != this.position){
+			//playback moved, start loading from there
+			seekTarget.set(frame);
+			LockSupport.unpark(thread);
+			return 0;
+		}
+		//only whole frames are read
+		int available = ring.available() / frameSize;
+		count = (int)Math.min(Math.min(count, available), this.numFrames - frame);
+		if(count == 0 && isFailed && ring.available() < frameSize){
+			//what was loaded before the error is all there is
+			this.numFrames = Math.min(this.numFrames, frame);
+			return 0;
+		}
+		if(count == 0){
+			//only count the first read of each stall
+			if(!isStarved){
+				underruns.incrementAndGet();
+				isStarved = true;
+			}
+			return 0;
+		}
+		isStarved = false;
+		ring.read(dst, offset, count * frameSize);
+		this.position = frame + count;
+		//let the loading thread know there is space
+		LockSupport.unpark(thread);
+		return count;
+	}
+
+	/** Gets the number of times that playback caught up with the loading */
+	public long getUnderruns(){
+		return underruns.get();
+	}
+
+	@Override
+	public long getBufferedEnd(long frame) {
+		if(seekTarget.get() != NO_SEEK){
+			//still moving, nothing is loaded there yet
+			return frame;
+		}
+		//the frames from loadStart up to the position were read already
+		long end = Math.min(this.numFrames, this.position + ring.available() / frameSize);
+		return frame >= this.loadStart && frame <= end ? end : frame;
+	}
+
+	@Override
+	public long getMemoryBytes() {
+		//the ring buffer and the chunk on the loading thread
+		return this.ring.getCapacity() + (long)CHUNK_FRAMES * frameSize;
+	}
+
+	@Override
+	public void close(){
+		this.isClosed = true;
+		LockSupport.unpark(thread);
+	}
+}
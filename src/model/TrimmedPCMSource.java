@@ -0,0 +1,62 @@
+package model;
+
+/**
+ * A part of another source, such as the samples of an mp3 file without the encoder delay and padding.
+ * @author zach jones
+ *
+ */
+public class TrimmedPCMSource implements PCMSource {
+
+	/** The whole source */
+	private final PCMSource source;
+	/** The index in source of the first frame of this */
+	private final long start;
+	/** The most frames in this, fewer if the source is not long enough */
+	private final long numFrames;
+
+	/**
+	 * Creates a source of part of another.
+	 * @param source The whole source, this is closed with this.
+	 * @param start The index in source of the first frame.
+	 * @param numFrames The number of frames, this is cut short if the source is not long enough,
+	 * which can change after this is made, if the source finds its length as it loads.
+	 */
+	public TrimmedPCMSource(PCMSource source, long start, long numFrames){
+		this.source = source;
+		this.start = start;
+		this.numFrames = numFrames;
+	}
+
+	@Override
+	public int getFrameSize() {
+		return source.getFrameSize();
+	}
+
+	@Override
+	public long getNumFrames() {
+		return Math.max(0, Math.min(this.numFrames, source.getNumFrames() - this.start));
+	}
+
+	@Override
+	public int read(long frame, byte[] dst, int offset, int count) {
+		long numFrames = getNumFrames();
+		if(frame >= numFrames){ return 0; }
+		count = (int)Math.min(count, numFrames - frame);
+		return source.read(this.start + frame, dst, offset, count);
+	}
+
+	@Override
+	public long getBufferedEnd(long frame) {
+		return Math.max(frame, Math.min(getNumFrames(), this.source.getBufferedEnd(frame + this.start) - this.start));
+	}
+
+	@Override
+	public long getMemoryBytes() {
+		return this.source.getMemoryBytes();
+	}
+
+	@Override
+	public void close() {
+		source.close();
+	}
+}
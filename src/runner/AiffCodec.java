@@ -0,0 +1,35 @@
+package runner;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import model.Player;
+
+/**
+ * The aiff format, an IFF file with an AIFF form.
+ * @author zach jones
+ *
+ */
+public class AiffCodec implements Codec {
+
+	@Override
+	public String getName() {
+		return "AIFF";
+	}
+
+	@Override
+	public int probe(ByteBuffer header, String filename) {
+		if(header.limit() >= 12 && header.getInt(0) == 0x464F524D && header.getInt(8) == 0x41494646){
+			//"FORM" and "AIFF"
+			return 100;
+		}
+		String name = filename.toLowerCase();
+		return name.endsWith(".aif") || name.endsWith(".aiff") ? 10 : 0;
+	}
+
+	@Override
+	public AudioRun open(String filename, Player p, OpenProgress progress) throws IOException {
+		//only the header is read, the samples are loaded as they are played
+		return new AiffRunner(filename, p);
+	}
+}
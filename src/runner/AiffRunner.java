@@ -5,14 +5,19 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 
+import model.ByteSwapPCMSource;
 import model.Converter;
+import model.MappedPCMSource;
+import model.FileProducer;
+import model.PCMSource;
+import model.StreamPCMSource;
 import model.Player;
 import model.SoundPlayer;
 
 public class AiffRunner implements AudioRun {
 
 	/** The acutal sound data for the file */
-	private byte[][] frames;
+	private PCMSource frames;
 	/** The number of channels of data */
 	private int numChannels;
 	/** The number of total samples */
@@ -35,6 +40,8 @@ public class AiffRunner implements AudioRun {
 	private String filename;
 	/** The number of bytes per sample */
 	private int bytesPerSample;
+	/** If the sound data is memory-mapped instead of loaded */
+	private boolean mapped;
 	
 	
 	private static long num256_2 = 0x1_0000L;
@@ -44,9 +51,28 @@ public class AiffRunner implements AudioRun {
 	private static long num256_6 = 0x1_0000_0000_0000L;
 	private static long num256_7 = 0x100_0000_0000_0000L;
 
+	/**
+	 * Constructor for an aiff runner, that memory-maps the sound data.
+	 * @param filename The filename to read
+	 * @param p The player that constructed this object, or null if nothing is told about changes
+	 * @throws IOException If there is an issue reading the file, or incorrect formatting.
+	 */
 	public AiffRunner(String filename, Player p) throws IOException{
+		this(filename, p, true);
+	}
+
+	/**
+	 * Constructor for an aiff runner.
+	 * @param filename The filename to read
+	 * @param p The player that constructed this object, or null if nothing is told about changes
+	 * @param mapped If true, the sound data is memory-mapped and streamed from the file as it plays, 
+	 * otherwise the sound data is read from the file on a new thread, a little ahead of playback.
+	 * @throws IOException If there is an issue reading the file, or incorrect formatting.
+	 */
+	public AiffRunner(String filename, Player p, boolean mapped) throws IOException{
 		this.p = p;
 		this.filename = filename;
+		this.mapped = mapped;
 
 		//test if the file exists
 		File f = new File(filename);
@@ -142,41 +168,50 @@ public class AiffRunner implements AudioRun {
 			byte[] tempbytes = new byte[(int) (length - 18)];
 			dat.readFully(tempbytes);
 		}
-		
-		//set the data's size
-		this.frames = new byte[(int)numSamples][this.bytesPerSample];
-		//initialize the player
-		this.player = new SoundPlayer(frames, (float)this.sampleRate, bitsPerSample, numChannels, true, this);
 	}
 
 	/** Reads the sound chunk of data, indicated by the 'SSND' marker
 	 * This should be the last chunk of data.
-	 * Uses a secondary thread to load the data 
+	 * The data is either memory-mapped, or loaded with a secondary thread.
 	 * @throws IOException */
 	private void readSSND() throws IOException{
-		if(this.player == null){
+		if(this.numChannels == 0){
 			throw new IOException("The COMM chunk should precede the SSND chunk.");
 		}
 		
-		//load on a new thread
-		new Thread(() -> {
-			try {
-				//the next 4 bytes are the size, not needed as the array length is already set
-				byte[] temp4 = new byte[4];
-				dat.readFully(temp4);
-
-				for(int i = 0; i < this.frames.length; i++){
-					//read in the sound data
-					dat.readFully(this.frames[i]);
-				}
-				
-				System.out.println("Finished loading file properly");
-			} catch(IOException e){
-				System.out.println("Error loading file: " + e.getMessage());
-			}
-			
-		}).start();
+		//the next 4 bytes are the size, not needed as the number of frames is already known
+		byte[] temp4 = new byte[4];
+		dat.readFully(temp4);
+		//the next 4 bytes are the offset to the first frame, this is almost always 0
+		dat.readFully(temp4);
+		long offset = Converter.toUIntBigEndian(temp4);
+		//the next 4 bytes are the block size, which is only used for alignment
+		dat.readFully(temp4);
 		
+		long dataOffset = dis.getChannel().position() + offset;
+		PCMSource source;
+		if(this.mapped){
+			source = new MappedPCMSource(dis.getChannel(), dataOffset, this.numSamples, this.bytesPerSample);
+			//the mapping stays valid after the file is closed
+			dat.close();
+			dis.close();
+		} else {
+			//load on a new thread, which closes the file when done
+			int bufferFrames = (int)(this.sampleRate * StreamPCMSource.DEFAULT_BUFFER_MILLIS / 1000);
+			source = new StreamPCMSource(new FileProducer(dis.getChannel(), dataOffset, this.bytesPerSample), 
+					this.numSamples, this.bytesPerSample, bufferFrames, "AIFF loading thread");
+		}
+		
+		//the samples are big endian, only swap them if the line can't play them as is
+		int sampleBytes = this.bytesPerSample / this.numChannels;
+		boolean bigEndian = sampleBytes == 1 || 
+				SoundPlayer.isSupported((float)this.sampleRate, bitsPerSample, numChannels, true);
+		if(!bigEndian){
+			source = new ByteSwapPCMSource(source, sampleBytes);
+		}
+		this.frames = source;
+		//initialize the player
+		this.player = new SoundPlayer(frames, (float)this.sampleRate, bitsPerSample, numChannels, bigEndian, this);
 	}
 
 	/** Reads the next chunk of data.
@@ -219,7 +254,8 @@ public class AiffRunner implements AudioRun {
 		} catch (IOException e) {
 			System.err.println("Unable to close the fileReader for file: " + this.filename);
 		}
-		//close the player
+		//stop any loading, and close the player
+		frames.close();
 		player.close();
 	}
 
@@ -235,10 +271,47 @@ public class AiffRunner implements AudioRun {
 		return this.player.getLength();
 	}
 
+	@Override
+	public void seek(long frame) {
+		//delegate to player, the frames are found by their offset in the file
+		this.player.seek(frame);
+	}
+
+	@Override
+	public void seekMillis(long millis) {
+		//delegate to player
+		this.player.seekMillis(millis);
+	}
+
+	@Override
+	public long getPositionFrames() {
+		//delegate to player
+		return this.player.getPositionFrames();
+	}
+
+	@Override
+	public long getLengthFrames() {
+		//delegate to player
+		return this.player.getLengthFrames();
+	}
+
+	@Override
+	public long getBufferedFrames() {
+		//delegate to player
+		return this.player.getBufferedFrames();
+	}
+
+	@Override
+	public SoundPlayer getSoundPlayer() {
+		return this.player;
+	}
+
 	@Override
 	public void stateChanged() {
 		//echo back
-		p.stateChanged();
+		if(p != null){
+			p.stateChanged();
+		}
 	}
 
 	@Override
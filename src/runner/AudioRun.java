@@ -1,5 +1,7 @@
 package runner;
 
+import model.SoundPlayer;
+
 public interface AudioRun {
 	/**
 	 * Plays the file
@@ -32,6 +34,38 @@ public interface AudioRun {
 	 * of the audio in this file, or -1 if there is an error.
 	 */
 	public int getLength();
+	/**
+	 * Moves playback to a frame (one sample on all channels), keeping it playing or paused.
+	 * Frames past the end move to the end.
+	 * @param frame The index of the frame to play next.
+	 */
+	public void seek(long frame);
+	/**
+	 * Moves playback to a time, see seek.
+	 * @param millis The number of milliseconds from the start of the audio.
+	 */
+	public void seekMillis(long millis);
+	/**
+	 * Gets the frame that this is currently at.
+	 * @return The index of the next frame to play, or -1 if there is an error.
+	 */
+	public long getPositionFrames();
+	/**
+	 * Gets the length of the audio file in frames.
+	 * @return The number of frames (samples on each channel), or -1 if there is an error.
+	 */
+	public long getLengthFrames();
+	/**
+	 * Gets how far the audio is loaded ahead of playback.
+	 * @return The index after the last frame that is loaded from the current frame on, 
+	 * the length if it is all loaded, or -1 if there is an error.
+	 */
+	public long getBufferedFrames();
+	/**
+	 * Gets the object that writes the sound to the line, so the next sound can be queued on it.
+	 * @return The sound player, or null if there is none.
+	 */
+	public SoundPlayer getSoundPlayer();
 	/** Call when the state of the object changes. 
 	 * This should call back down to the GUI*/
 	public void stateChanged();
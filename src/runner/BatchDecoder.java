@@ -0,0 +1,416 @@
+package runner;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.sound.sampled.AudioFormat;
+
+import model.PCMSource;
+import model.SoundPlayer;
+import model.StreamPCMSource;
+
+/**
+ * Decodes audio files to wav or raw PCM from the command line, without the GUI.
+ * <pre>
+ * java runner.BatchDecoder [-raw] [-float] [-threads n] [-v] -o outputFolder inputs...
+ * </pre>
+ * The inputs are files or folders, the folders are searched for audio files in all of their subfolders,
+ * and the output files are put in the same subfolders of the output folder, named by the whole input name
+ * (a.mp3 is written to a.mp3.wav), so files that differ only in their extension don't write over each other.
+ * A file is skipped if its output would replace an input or another file's output.
+ * The formats are read with the codecs, without a Player, so this doesn't need JavaFX.
+ * The messages of the codecs are only printed with -v, so they don't get mixed in with the speeds.
+ * With -float, mp3 files are decoded with floats instead of doubles in the IMDCT and synthesis,
+ * which differs from the doubles by at most about 1 bit of the 16 bit output.
+ * The files are decoded in parallel on a work-stealing pool with a thread for each core, the largest first.
+ * Each file is decoded on the pool's thread and written a chunk at a time as it is decoded,
+ * so the memory used doesn't depend on the size of the files.
+ * For each file, and for all of them, this prints how many times faster than real time the decoding was.
+ * @author zach jones
+ *
+ */
+public class BatchDecoder {
+
+	/** The number of frames decoded and written at a time */
+	private static final int CHUNK_FRAMES = 8192;
+	/** The number of bytes in a wav header with only a fmt and data chunk */
+	private static final int WAV_HEADER_SIZE = 44;
+	/** The time to wait for a source that is still loading (1 ms) */
+	private static final long LOADING_WAIT_NANOS = 1_000_000;
+
+	/** The folder to put the decoded files in */
+	private final Path output;
+	/** If the files are written as raw samples with no header, instead of wav */
+	private final boolean raw;
+	/** If mp3 files are decoded with floats instead of doubles */
+	private final boolean singlePrecision;
+
+	/**
+	 * Creates a decoder.
+	 * @param output The folder to put the decoded files in.
+	 * @param raw If true, the files are raw 16 bit (or the file's sample size) little endian signed samples,
+	 * with the channels interleaved, otherwise they are wav files.
+	 * @param singlePrecision If mp3 files are decoded with floats instead of doubles in the IMDCT and synthesis.
+	 */
+	public BatchDecoder(Path output, boolean raw, boolean singlePrecision){
+		this.output = output;
+		this.raw = raw;
+		this.singlePrecision = singlePrecision;
+	}
+
+	/** Runs the decoder, see the class comment for the arguments */
+	public static void main(String[] args) {
+		boolean raw = false;
+		boolean singlePrecision = false;
+		boolean verbose = false;
+		int threads = Runtime.getRuntime().availableProcessors();
+		Path output = null;
+		List<Path> inputs = new ArrayList<>();
+		try {
+			for(int i = 0; i < args.length; i++){
+				if(args[i].equals("-raw")){
+					raw = true;
+				} else if(args[i].equals("-float")){
+					singlePrecision = true;
+				} else if(args[i].equals("-v")){
+					verbose = true;
+				} else if(args[i].equals("-threads")){
+					threads = Integer.parseInt(args[++i]);
+				} else if(args[i].equals("-o")){
+					output = Paths.get(args[++i]);
+				} else {
+					inputs.add(Paths.get(args[i]));
+				}
+			}
+		} catch(ArrayIndexOutOfBoundsException | NumberFormatException e){
+			output = null;
+		}
+		if(output == null || inputs.isEmpty() || threads < 1){
+			System.out.println("Usage: java runner.BatchDecoder [-raw] [-float] [-threads n] [-v] -o outputFolder inputs...");
+			System.exit(2);
+		}
+
+		PrintStream report = System.out;
+		if(!verbose){
+			//the codecs print what they find in each file
+			System.setOut(new PrintStream(new OutputStream(){
+				@Override
+				public void write(int b) {
+					//thrown away
+				}
+			}));
+		}
+		BatchDecoder decoder = new BatchDecoder(output, raw, singlePrecision);
+		List<Job> jobs;
+		try {
+			jobs = decoder.findJobs(inputs, report);
+		} catch(IOException e){
+			report.println("Unable to read the inputs: " + e.getMessage());
+			System.exit(2);
+			return;
+		}
+		int failed = decoder.run(jobs, threads, report);
+		System.exit(failed == 0 ? 0 : 1);
+	}
+
+	/**
+	 * Finds the audio files in the inputs, the codec to read each one with, and where each one is written.
+	 * @param inputs The files and folders.
+	 * @param report Where to print the files that are skipped.
+	 * @return The files, the largest first, so the pool doesn't end with one large file on one thread.
+	 * @throws IOException If a folder can't be read.
+	 */
+	List<Job> findJobs(List<Path> inputs, PrintStream report) throws IOException {
+		List<Job> jobs = new ArrayList<>();
+		for(Path input : inputs){
+			if(Files.isDirectory(input)){
+				List<Path> files;
+				try(Stream<Path> walk = Files.walk(input)){
+					files = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+				}
+				for(Path f : files){
+					//only the files that a codec can read
+					List<Codec> codecs = CodecRegistry.probe(f.toFile());
+					if(!codecs.isEmpty()){
+						Path out = output.resolve(input.relativize(f)).resolveSibling(outputName(f));
+						jobs.add(new Job(f, out, codecs.get(0)));
+					}
+				}
+			} else {
+				//a file that was named is an error if it can't be read
+				List<Codec> codecs = CodecRegistry.probe(input.toFile());
+				jobs.add(new Job(input, output.resolve(outputName(input)), codecs.isEmpty() ? null : codecs.get(0)));
+			}
+		}
+		//an output can't replace an input (which could be mapped while it is read) or another output
+		Set<Path> used = new HashSet<>();
+		for(Job job : jobs){
+			used.add(job.input.toAbsolutePath().normalize());
+		}
+		List<Job> kept = new ArrayList<>();
+		for(Job job : jobs){
+			if(used.add(job.output.toAbsolutePath().normalize())){
+				kept.add(job);
+			} else {
+				report.println("Skipping " + job.input + ", " + job.output + " is an input or the output of another file.");
+			}
+		}
+		kept.sort((a, b) -> Long.compare(b.size, a.size));
+		return kept;
+	}
+
+	/** Gets the name of the output file for an input file, the whole name with .wav or .raw after it */
+	private String outputName(Path input){
+		return input.getFileName().toString() + (raw ? ".raw" : ".wav");
+	}
+
+	/**
+	 * Decodes all of the files, printing the speed of each one, and of all of them.
+	 * @param jobs The files.
+	 * @param threads The number of threads to decode with.
+	 * @param report Where to print the speeds and errors.
+	 * @return The number of files that couldn't be decoded.
+	 */
+	int run(List<Job> jobs, int threads, PrintStream report){
+		report.println("Decoding " + jobs.size() + " files on " + threads + " threads.");
+		long time = System.nanoTime();
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		List<ForkJoinTask<Double>> tasks = new ArrayList<>();
+		for(Job job : jobs){
+			tasks.add(pool.submit(() -> decode(job, report)));
+		}
+		double totalSeconds = 0;
+		int failed = 0;
+		for(int i = 0; i < tasks.size(); i++){
+			try {
+				totalSeconds += tasks.get(i).get();
+			} catch(ExecutionException e){
+				report.println("Unable to decode " + jobs.get(i).input + ": " + getMessage(e));
+				failed++;
+			} catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		pool.shutdown();
+		double wall = (System.nanoTime() - time) / 1e9;
+		report.println(String.format("Decoded %d files, %.1f s of audio in %.2f s, %.1fx real time. %d failed.",
+				jobs.size() - failed, totalSeconds, wall, totalSeconds / wall, failed));
+		return failed;
+	}
+
+	/**
+	 * Gets the message of the exception that a task threw.
+	 * The pool wraps an IOException from a task in a RuntimeException, inside the ExecutionException,
+	 * so this is the message of the first IOException in the causes,
+	 * or the type and message of the last cause if there is none (an error in a codec).
+	 */
+	private static String getMessage(Throwable e){
+		while(!(e instanceof IOException) && e.getCause() != null){
+			e = e.getCause();
+		}
+		if(e instanceof IOException && e.getMessage() != null){
+			return e.getMessage();
+		}
+		return e.toString();
+	}
+
+	/**
+	 * Decodes a file to its output, on a thread of the pool.
+	 * @return The number of seconds of audio.
+	 * @throws IOException If the file can't be read or decoded, or the output can't be written.
+	 */
+	private double decode(Job job, PrintStream report) throws IOException {
+		long time = System.nanoTime();
+		if(job.codec == null){
+			throw new IOException("The file is not in a supported format.");
+		}
+		if(job.output.getParent() != null){
+			Files.createDirectories(job.output.getParent());
+		}
+		long frames;
+		float sampleRate;
+		if(job.codec instanceof MP3Codec){
+			//decoded on this thread, the producer only reads a small window of the file at a time
+			MP3FileProducer producer = MP3FileProducer.open(job.input, singlePrecision);
+			MP3SeekIndex index = producer.getIndex();
+			sampleRate = index.getSampleRate();
+			frames = write(job.output, producer, index.getSampleRate(), 16, index.getChannels(),
+					index.getChannels() * 2, false, false);
+		} else {
+			//the uncompressed formats are memory-mapped, so they are read as they are written
+			AudioRun r = job.codec.open(job.input.toAbsolutePath().toString(), null, new OpenProgress(job.input.toString()));
+			try {
+				SoundPlayer sp = r.getSoundPlayer();
+				AudioFormat format = sp.getFormat();
+				sampleRate = format.getSampleRate();
+				//wav files keep 8 bit samples unsigned
+				boolean unsigned = job.codec instanceof WAVCodec;
+				frames = write(job.output, new SourceProducer(sp.getSource()), (int)sampleRate,
+						format.getSampleSizeInBits(), format.getChannels(), sp.getSource().getFrameSize(),
+						format.isBigEndian(), unsigned);
+			} finally {
+				r.close();
+			}
+		}
+		double seconds = frames / sampleRate;
+		double wall = (System.nanoTime() - time) / 1e9;
+		report.println(String.format("%s: %.1f s of audio in %.2f s, %.1fx real time",
+				job.input.getFileName(), seconds, wall, seconds / wall));
+		return seconds;
+	}
+
+	/**
+	 * Writes all of the frames of a producer to a file, as wav or raw samples.
+	 * The wav header is written last, since the number of frames is only known at the end.
+	 * @param out The file to write.
+	 * @param producer Makes the frames, this is closed when done.
+	 * @param sampleRate The number of samples per second.
+	 * @param bits The number of bits in each sample.
+	 * @param channels The number of channels.
+	 * @param frameSize The number of bytes in a frame.
+	 * @param bigEndian If the samples from the producer are big endian, they are written little endian.
+	 * @param unsigned8 If 8 bit samples from the producer are unsigned instead of signed.
+	 * @return The number of frames written.
+	 */
+	private long write(Path out, StreamPCMSource.Producer producer, int sampleRate, int bits, int channels,
+			int frameSize, boolean bigEndian, boolean unsigned8) throws IOException {
+		int sampleBytes = frameSize / channels;
+		//wav has unsigned 8 bit samples, raw is always signed
+		boolean flipSign = sampleBytes == 1 && (raw ? unsigned8 : !unsigned8);
+		long frames = 0;
+		try(FileChannel channel = FileChannel.open(out, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)){
+			byte[] chunk = new byte[CHUNK_FRAMES * frameSize];
+			long position = raw ? 0 : WAV_HEADER_SIZE;
+			int count;
+			while((count = producer.produce(chunk, 0, CHUNK_FRAMES)) > 0){
+				int len = count * frameSize;
+				if(bigEndian && sampleBytes > 1){
+					for(int i = 0; i < len; i += sampleBytes){
+						for(int a = i, b = i + sampleBytes - 1; a < b; a++, b--){
+							byte temp = chunk[a];
+							chunk[a] = chunk[b];
+							chunk[b] = temp;
+						}
+					}
+				} else if(flipSign){
+					for(int i = 0; i < len; i++){
+						chunk[i] ^= 0x80;
+					}
+				}
+				ByteBuffer buffer = ByteBuffer.wrap(chunk, 0, len);
+				while(buffer.hasRemaining()){
+					position += channel.write(buffer, position);
+				}
+				frames += count;
+			}
+			if(!raw){
+				writeWavHeader(channel, sampleRate, bits, channels, frameSize, frames * frameSize);
+			}
+		} finally {
+			producer.close();
+		}
+		return frames;
+	}
+
+	/** Writes the 44 byte header of a PCM wav file at the start of the channel */
+	private static void writeWavHeader(FileChannel channel, int sampleRate, int bits, int channels,
+			int frameSize, long dataSize) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(WAV_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		header.put(new byte[]{'R', 'I', 'F', 'F'});
+		//the sizes are unsigned 32 bit
+		header.putInt((int)Math.min(0xFFFFFFFFL, dataSize + WAV_HEADER_SIZE - 8));
+		header.put(new byte[]{'W', 'A', 'V', 'E'});
+		header.put(new byte[]{'f', 'm', 't', ' '});
+		header.putInt(16);
+		//1 is PCM
+		header.putShort((short)1);
+		header.putShort((short)channels);
+		header.putInt(sampleRate);
+		header.putInt(sampleRate * frameSize);
+		header.putShort((short)frameSize);
+		header.putShort((short)bits);
+		header.put(new byte[]{'d', 'a', 't', 'a'});
+		header.putInt((int)Math.min(0xFFFFFFFFL, dataSize));
+		header.flip();
+		while(header.hasRemaining()){
+			channel.write(header, header.position());
+		}
+	}
+
+	/**
+	 * A file to decode, and where to write it.
+	 */
+	static class Job {
+		/** The file to decode */
+		private final Path input;
+		/** The file to write */
+		private final Path output;
+		/** The codec that is most confident it can read the input, null if none can */
+		private final Codec codec;
+		/** The size of the input file in bytes */
+		private final long size;
+
+		/** Creates a job */
+		Job(Path input, Path output, Codec codec){
+			this.input = input;
+			this.output = output;
+			this.codec = codec;
+			this.size = input.toFile().length();
+		}
+	}
+
+	/**
+	 * Produces the frames of a source in order, waiting for a source that loads on another thread.
+	 */
+	private static class SourceProducer implements StreamPCMSource.Producer {
+		/** The source */
+		private final PCMSource source;
+		/** The index of the next frame */
+		private long position;
+
+		/** Creates a producer from the first frame of the source */
+		private SourceProducer(PCMSource source){
+			this.source = source;
+		}
+
+		@Override
+		public void seek(long frame) {
+			this.position = frame;
+		}
+
+		@Override
+		public int produce(byte[] dst, int offset, int count) {
+			int num;
+			while((num = source.read(position, dst, offset, count)) == 0 && position < source.getNumFrames()){
+				LockSupport.parkNanos(this, LOADING_WAIT_NANOS);
+			}
+			position += num;
+			return num;
+		}
+
+		@Override
+		public void close() {
+			//the runner closes the source
+		}
+	}
+}
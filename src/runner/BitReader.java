@@ -0,0 +1,114 @@
+package runner;
+
+/**
+ * Reads numbers of up to 32 bits out of an array of bytes, most significant bit first.
+ * The bits are taken out of a whole word at a time with shifts and masks,
+ * and the reader can be pointed at a different array, so nothing is allocated while reading.
+ * Reading past the end of the data gives 0 bits.
+ * @author zach jones
+ *
+ */
+class BitReader {
+
+	/** The bytes to read from */
+	private byte[] data;
+	/** The index in data after the last byte that can be read */
+	private int limit;
+	/** The index of the next bit to read, counted from the start of data */
+	private int bitIndex;
+
+	/** Creates a reader with no data, use setData before reading */
+	BitReader(){
+		this.data = new byte[0];
+		this.limit = 0;
+		this.bitIndex = 0;
+	}
+
+	/**
+	 * Points the reader at the data.
+	 * @param data The bytes to read from.
+	 * @param offset The index in data of the first byte to read.
+	 * @param limit The index in data after the last byte that can be read.
+	 */
+	void setData(byte[] data, int offset, int limit){
+		this.data = data;
+		this.limit = limit;
+		this.bitIndex = offset * 8;
+	}
+
+	/** Gets the index of the next bit to read, counted from the start of the data array */
+	int getBitIndex(){
+		return this.bitIndex;
+	}
+
+	/** Moves to a bit index, counted from the start of the data array */
+	void setBitIndex(int bitIndex){
+		this.bitIndex = bitIndex;
+	}
+
+	/** Moves ahead without reading the bits */
+	void skipBits(int numBits){
+		this.bitIndex += numBits;
+	}
+
+	/** Reads the next bit, 0 or 1 */
+	int get1Bit(){
+		int index = bitIndex >>> 3;
+		int bit = index < limit ? (data[index] >>> (7 - (bitIndex & 7))) & 1 : 0;
+		bitIndex++;
+		return bit;
+	}
+
+	/** Reads the next bit as a flag */
+	boolean getFlag(){
+		return get1Bit() == 1;
+	}
+
+	/**
+	 * Reads an unsigned number.
+	 * @param numBits The number of bits, 0 to 32.
+	 * @return The number, a 32 bit number can be negative.
+	 */
+	int getBits(int numBits){
+		if(numBits == 0){
+			return 0;
+		}
+		int value = (int)(peekWord() >>> (64 - numBits));
+		bitIndex += numBits;
+		return value;
+	}
+
+	/**
+	 * Gets the next bits without moving ahead, used to look up codes that can have different lengths.
+	 * @param numBits The number of bits, 1 to 32.
+	 * @return The bits as an unsigned number.
+	 */
+	int peekBits(int numBits){
+		return (int)(peekWord() >>> (64 - numBits));
+	}
+
+	/**
+	 * Gets the next 32 or more bits without moving ahead.
+	 * @return The bits at the top of the long, the first bit is the sign bit.
+	 */
+	private long peekWord(){
+		int index = bitIndex >>> 3;
+		long word;
+		if(index + 5 <= limit){
+			//the common case, all 5 bytes are there
+			word = ((long)(data[index] & 0xFF) << 56)
+				| ((long)(data[index + 1] & 0xFF) << 48)
+				| ((long)(data[index + 2] & 0xFF) << 40)
+				| ((long)(data[index + 3] & 0xFF) << 32)
+				| ((long)(data[index + 4] & 0xFF) << 24);
+		} else {
+			word = 0;
+			for(int i = 0; i < 5; i++){
+				long b = index + i < limit ? data[index + i] & 0xFF : 0;
+				word |= b << (56 - 8 * i);
+			}
+		}
+		//drop the bits of the first byte that were already read
+		return word << (bitIndex & 7);
+	}
+}
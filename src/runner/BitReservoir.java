@@ -0,0 +1,90 @@
+package runner;
+
+/**
+ * Holds the main data of the last few mp3 frames, and reads bits from it.
+ * The main data of a frame can start in the frames before it (the bit reservoir),
+ * so the decoder adds each frame's main data here and then reads from where the frame's data begins.
+ * @author zach jones
+ *
+ */
+class BitReservoir {
+
+	/** The largest main_data_begin, the most bytes that are needed from previous frames */
+	private static final int MAX_BEGIN = 511;
+
+	/** The main data bytes of the last few frames */
+	private byte[] buffer;
+	/** The number of bytes in the buffer */
+	private int length;
+	/** The reader over the buffer */
+	private final BitReader reader;
+
+	/** Creates an empty reservoir */
+	BitReservoir(){
+		this.buffer = new byte[4096];
+		this.length = 0;
+		this.reader = new BitReader();
+		reader.setData(buffer, 0, 0);
+	}
+
+	/** Throws away all the data, used when moving to a different place in the file */
+	void reset(){
+		this.length = 0;
+		reader.setData(buffer, 0, 0);
+	}
+
+	/**
+	 * Adds the main data of the next frame, and moves to the start of its data.
+	 * @param frame The frame to add.
+	 * @return true if the frame's main data is all here, false if it starts 
+	 * in frames that were not added (such as the first frame after a reset).
+	 */
+	boolean addFrame(MP3Frame frame){
+		int size = frame.getMainDataSize();
+		if(length + size > buffer.length){
+			//only the last MAX_BEGIN bytes can be used again
+			int keep = Math.min(length, MAX_BEGIN);
+			System.arraycopy(buffer, length - keep, buffer, 0, keep);
+			length = keep;
+			if(keep + size > buffer.length){
+				byte[] bigger = new byte[keep + size];
+				System.arraycopy(buffer, 0, bigger, 0, keep);
+				buffer = bigger;
+			}
+		}
+		int start = length - frame.getMainDataBegin();
+		System.arraycopy(frame.getData(), frame.getMainDataOffset(), buffer, length, size);
+		length += size;
+		reader.setData(buffer, Math.max(start, 0), length);
+		return start >= 0;
+	}
+
+	/** Gets the index of the next bit to read */
+	int getBitIndex(){
+		return reader.getBitIndex();
+	}
+
+	/** Moves to a bit index, used to skip over the unused bits at the end of a granule */
+	void setBitIndex(int bitIndex){
+		reader.setBitIndex(bitIndex);
+	}
+
+	/** Gets the reader of the main data, at the next bit to read */
+	BitReader getReader(){
+		return reader;
+	}
+
+	/** Reads the next bit, 0 if there is no more data */
+	int get1Bit(){
+		return reader.get1Bit();
+	}
+
+	/**
+	 * Reads an unsigned number, most significant bit first.
+	 * @param numBits The number of bits, at most 32.
+	 * @return The number.
+	 */
+	int getBits(int numBits){
+		return reader.getBits(numBits);
+	}
+}
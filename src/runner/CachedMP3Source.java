@@ -0,0 +1,254 @@
+package runner;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import model.PCMSource;
+
+/**
+ * A source of the samples of an mp3 file that keeps the compressed frames in memory,
+ * and decodes blocks of frames when they are needed, keeping the most recently used blocks.
+ * A thread decodes the blocks just ahead of the one being played, reading never decodes,
+ * so if playback gets to a block that is not decoded yet (after a seek) the read returns nothing until it is.
+ * Each block is decoded from the frames before it, so the blocks can be decoded in any order,
+ * and going back to a block that is still cached does not decode anything.
+ * @author zach jones
+ *
+ */
+public class CachedMP3Source implements PCMSource {
+
+	/** The default number of bytes of decoded blocks to keep (about 95 seconds of 44.1 kHz stereo) */
+	public static final int DEFAULT_CACHE_BYTES = 16 << 20;
+	/** The number of mp3 frames in a block (about 0.8 seconds) */
+	private static final int BLOCK_FRAMES = 32;
+	/** The number of blocks after the one being played that are decoded ahead */
+	private static final int AHEAD_BLOCKS = 2;
+	/** The value of lastBlock when nothing has been read */
+	private static final int NONE = -1;
+
+	/** All the frames of the file */
+	private final List<MP3Frame> frames;
+	/** The number of bytes in a frame (one sample on all channels) */
+	private final int frameSize;
+	/** The number of samples on each channel in a block */
+	private final int blockSamples;
+	/** The number of blocks in the file */
+	private final int numBlocks;
+	/** The number of bytes of the compressed frames */
+	private final long compressedBytes;
+	/** The decoded blocks, by block index, in order from least to most recently used */
+	private final LinkedHashMap<Integer, byte[]> cache;
+	/** The block that playback is in, the decoding thread decodes from here */
+	private volatile int wanted;
+	/** The thread that decodes the blocks */
+	private final Thread thread;
+	/** If this is closed */
+	private volatile boolean isClosed;
+	/** The number of blocks that playback found already decoded */
+	private final AtomicLong hits;
+	/** The number of blocks that playback had to wait for */
+	private final AtomicLong misses;
+	/** The number of blocks that were thrown away to make room */
+	private final AtomicLong evictions;
+	/** The last block that playback looked up, so each block counts once as a hit or a miss, only used by playback */
+	private int lastBlock;
+
+	/**
+	 * Creates the source, and starts decoding the first blocks.
+	 * @param frames The frames of the file, this should have fast random access (not a linked list).
+	 * @param channels The number of channels, all of the frames must have the same number.
+	 * @param cacheBytes The most bytes of decoded samples to keep, at least a few blocks are always kept.
+	 */
+	CachedMP3Source(List<MP3Frame> frames, int channels, long cacheBytes){
+		this.frames = frames;
+		this.frameSize = channels * 2;
+		this.blockSamples = BLOCK_FRAMES * MP3Decoder.SAMPLES_PER_FRAME;
+		this.numBlocks = (frames.size() + BLOCK_FRAMES - 1) / BLOCK_FRAMES;
+		long compressed = 0;
+		for(MP3Frame f : frames){
+			compressed += f.getSize();
+		}
+		this.compressedBytes = compressed;
+		int maxBlocks = (int)Math.max(AHEAD_BLOCKS + 2, Math.min(Integer.MAX_VALUE, cacheBytes / (blockSamples * frameSize)));
+		this.cache = new LinkedHashMap<Integer, byte[]>(16, 0.75f, true){
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> eldest){
+				if(size() > maxBlocks){
+					evictions.incrementAndGet();
+					return true;
+				}
+				return false;
+			}
+		};
+		this.wanted = 0;
+		this.hits = new AtomicLong();
+		this.misses = new AtomicLong();
+		this.evictions = new AtomicLong();
+		this.lastBlock = NONE;
+		this.isClosed = false;
+
+		this.thread = new Thread(this::decodeAhead);
+		this.thread.setName("MP3 block decoding thread");
+		//don't want to halt the program from stopping while decoding
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/** The loop of the decoding thread, decodes the wanted block and the ones after it until this is closed */
+	private void decodeAhead(){
+		MP3Decoder decoder = new MP3Decoder();
+		//the block that the decoder's state is right before, so it can go on without warming up
+		int nextBlock = 0;
+		while(!isClosed){
+			int start = this.wanted;
+			for(int b = start; b <= start + AHEAD_BLOCKS && b < numBlocks && !isClosed && wanted == start; b++){
+				synchronized(cache){
+					//get, not containsKey, so the blocks ahead are also the most recently used
+					if(cache.get(b) != null){
+						continue;
+					}
+				}
+				byte[] block = decodeBlock(decoder, b, b == nextBlock);
+				nextBlock = b + 1;
+				synchronized(cache){
+					cache.put(b, block);
+				}
+			}
+			if(wanted == start){
+				LockSupport.park(this);
+			}
+		}
+	}
+
+	/**
+	 * Decodes the frames of a block.
+	 * @param decoder The decoder to use.
+	 * @param block The index of the block.
+	 * @param isNext If the decoder has just decoded the block before, otherwise it is warmed up first.
+	 * @return The samples of the block.
+	 */
+	private byte[] decodeBlock(MP3Decoder decoder, int block, boolean isNext){
+		int start = block * BLOCK_FRAMES;
+		int end = Math.min(start + BLOCK_FRAMES, frames.size());
+		int bytesPerFrame = MP3Decoder.SAMPLES_PER_FRAME * frameSize;
+		byte[] pcm = new byte[(end - start) * bytesPerFrame];
+		if(!isNext){
+			//get to the same state as decoding the frames before in order
+			decoder.reset();
+			if(start > 0){
+				for(int i = MP3Decoder.getReservoirStart(frames, start - 1); i < start - 1; i++){
+					decoder.skip(frames.get(i));
+				}
+				decoder.decode(frames.get(start - 1), pcm, 0);
+			}
+		}
+		for(int i = start; i < end; i++){
+			decoder.decode(frames.get(i), pcm, (i - start) * bytesPerFrame);
+		}
+		return pcm;
+	}
+
+	@Override
+	public int getFrameSize() {
+		return this.frameSize;
+	}
+
+	@Override
+	public long getNumFrames() {
+		return (long)frames.size() * MP3Decoder.SAMPLES_PER_FRAME;
+	}
+
+	@Override
+	public int read(long frame, byte[] dst, int offset, int count) {
+		count = (int)Math.min(count, getNumFrames() - frame);
+		int read = 0;
+		while(read < count){
+			int b = (int)((frame + read) / blockSamples);
+			byte[] block;
+			synchronized(cache){
+				block = cache.get(b);
+			}
+			//only the first look up of each block counts, so waiting for a block is one miss
+			if(lastBlock != b){
+				lastBlock = b;
+				if(block == null){
+					misses.incrementAndGet();
+				} else {
+					hits.incrementAndGet();
+				}
+			}
+			if(block == null){
+				break;
+			}
+			int index = (int)((frame + read) % blockSamples);
+			int num = Math.min(count - read, block.length / frameSize - index);
+			System.arraycopy(block, index * frameSize, dst, offset + read * frameSize, num * frameSize);
+			read += num;
+		}
+		//let the decoding thread know where playback is
+		int b = (int)(Math.min(frame + read, getNumFrames() - 1) / blockSamples);
+		if(b != this.wanted){
+			this.wanted = b;
+			LockSupport.unpark(thread);
+		}
+		return read;
+	}
+
+	/** Gets the number of blocks that playback found already decoded */
+	public long getHits(){
+		return hits.get();
+	}
+
+	/** Gets the number of blocks that playback had to wait to be decoded */
+	public long getMisses(){
+		return misses.get();
+	}
+
+	/** Gets the number of decoded blocks that were thrown away to make room for others */
+	public long getEvictions(){
+		return evictions.get();
+	}
+
+	@Override
+	public long getBufferedEnd(long frame) {
+		if(frame >= getNumFrames()){
+			return getNumFrames();
+		}
+		int b = (int)(frame / blockSamples);
+		synchronized(cache){
+			//containsKey doesn't change the order of the blocks
+			while(b < numBlocks && cache.containsKey(b)){
+				b++;
+			}
+		}
+		return Math.max(frame, Math.min(getNumFrames(), (long)b * blockSamples));
+	}
+
+	@Override
+	public long getMemoryBytes() {
+		long blocks;
+		synchronized(cache){
+			blocks = cache.size();
+		}
+		return this.compressedBytes + blocks * blockSamples * frameSize;
+	}
+
+	@Override
+	public void close() {
+		this.isClosed = true;
+		LockSupport.unpark(thread);
+		synchronized(cache){
+			cache.clear();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "Cache hits: " + getHits() + ", misses: " + getMisses() + ", evictions: " + getEvictions();
+	}
+}
@@ -0,0 +1,44 @@
+package runner;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import model.Player;
+
+/**
+ * A format of audio file that can be played.
+ * The formats are found with a ServiceLoader, so to add a format, implement this with a public no-argument
+ * constructor, and add the class name to META-INF/services/runner.Codec.
+ * @author zach jones
+ *
+ */
+public interface Codec {
+	/** The most bytes from the start of the file that are given to probe */
+	public static final int PROBE_SIZE = 512;
+
+	/**
+	 * Gets the name of the format.
+	 * @return A short name, like "WAV".
+	 */
+	public String getName();
+
+	/**
+	 * Checks how likely it is that the file is in this format, from the start of the file.
+	 * @param header The first PROBE_SIZE bytes of the file (fewer if the file is smaller), 
+	 * big endian, from position 0 to the limit. This is shared with the other formats, so only use absolute gets.
+	 * @param filename The name of the file, the extension can be used if the bytes don't say.
+	 * @return The confidence, 0 if the file is not in this format, up to 100 if it is certain.
+	 */
+	public int probe(ByteBuffer header, String filename);
+
+	/**
+	 * Opens the file to be played.
+	 * @param filename The full name of the file.
+	 * @param p The player that plays the file, or null to read it without one (see BatchDecoder).
+	 * @param progress Where to put how much of the file was read, formats that read a lot of the file 
+	 * should stop with an InterruptedIOException if it is cancelled.
+	 * @return The runner for the file.
+	 * @throws IOException If there is an issue reading the file, or incorrect formatting.
+	 */
+	public AudioRun open(String filename, Player p, OpenProgress progress) throws IOException;
+}
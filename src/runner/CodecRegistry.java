@@ -0,0 +1,136 @@
+package runner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+import model.Player;
+
+/**
+ * Finds the format of audio files from the first bytes of the file, using all the codecs
+ * that are registered with the ServiceLoader. Each file's header is read once and given to all the codecs.
+ * @author zach jones
+ *
+ */
+public final class CodecRegistry {
+
+	/** All of the codecs that were found */
+	private static final List<Codec> CODECS = load();
+
+	/** There are no instances of this */
+	private CodecRegistry(){}
+
+	/** Loads the codecs, in the order they are listed */
+	private static List<Codec> load(){
+		List<Codec> codecs = new ArrayList<>();
+		for(Codec c : ServiceLoader.load(Codec.class)){
+			codecs.add(c);
+		}
+		return Collections.unmodifiableList(codecs);
+	}
+
+	/** Gets all the codecs that are registered */
+	public static List<Codec> getCodecs(){
+		return CODECS;
+	}
+
+	/**
+	 * Finds the formats that a file could be in, reading only the start of the file.
+	 * @param file The file to check.
+	 * @return The codecs that could read the file, most confident first, empty if there are none.
+	 * @throws IOException If the file can't be read.
+	 */
+	public static List<Codec> probe(File file) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(Codec.PROBE_SIZE);
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+			while(header.hasRemaining() && channel.read(header) >= 0){
+				//read until full or the end of the file
+			}
+		}
+		header.flip();
+		return probe(header, file.getName());
+	}
+
+	/**
+	 * Finds the formats that a file could be in.
+	 * @param header The start of the file, from position 0 to the limit.
+	 * @param filename The name of the file.
+	 * @return The codecs that could read the file, most confident first, empty if there are none.
+	 */
+	public static List<Codec> probe(ByteBuffer header, String filename){
+		ByteBuffer shared = header.asReadOnlyBuffer();
+		Map<Codec, Integer> scores = new HashMap<>();
+		List<Codec> matches = new ArrayList<>();
+		for(Codec c : CODECS){
+			int score = c.probe(shared, filename);
+			if(score > 0){
+				scores.put(c, score);
+				matches.add(c);
+			}
+		}
+		//the sort is stable, so ties stay in the registered order
+		matches.sort(Comparator.comparing((Codec c) -> scores.get(c)).reversed());
+		return matches;
+	}
+
+	/**
+	 * Opens a file with the codec that is most confident it can read it.
+	 * If that codec fails, the next most confident codec is tried.
+	 * @param file The file to open.
+	 * @param p The player that plays the file, or null to read it without one (see BatchDecoder).
+	 * @return The runner for the file.
+	 * @throws IOException If no codec can read the file, this is the error from the most confident codec.
+	 */
+	public static AudioRun open(File file, Player p) throws IOException {
+		return open(file, p, new OpenProgress(file.getName()));
+	}
+
+	/**
+	 * Opens a file with the codec that is most confident it can read it, see open(File, Player).
+	 * @param file The file to open.
+	 * @param p The player that plays the file, or null to read it without one (see BatchDecoder).
+	 * @param progress Where to put how much of the file was read, this stops if it is cancelled.
+	 * @return The runner for the file.
+	 * @throws IOException If no codec can read the file, or an InterruptedIOException if it was cancelled.
+	 */
+	public static AudioRun open(File file, Player p, OpenProgress progress) throws IOException {
+		progress.setTotalBytes(file.length());
+		List<Codec> matches = probe(file);
+		if(matches.isEmpty()){
+			List<String> names = new ArrayList<>();
+			for(Codec c : CODECS){
+				names.add(c.getName());
+			}
+			throw new IOException("The file is not in a supported format, the formats are: " + String.join(", ", names));
+		}
+		IOException first = null;
+		for(Codec c : matches){
+			progress.checkCancelled();
+			try {
+				System.out.println("Opening as " + c.getName());
+				AudioRun r = c.open(file.getAbsolutePath(), p, progress);
+				progress.setBytesScanned(progress.getTotalBytes());
+				return r;
+			} catch(InterruptedIOException e){
+				//cancelled, the other codecs aren't tried
+				throw e;
+			} catch(IOException e){
+				System.out.println("Unable to open as " + c.getName() + ": " + e.getMessage());
+				if(first == null){
+					first = e;
+				}
+			}
+		}
+		throw first;
+	}
+}
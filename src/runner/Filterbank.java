@@ -0,0 +1,166 @@
+package runner;
+
+/**
+ * The last two stages of layer III decoding for one channel: the IMDCT (with the overlap between granules),
+ * and the polyphase synthesis filterbank that makes the PCM samples.
+ * These keep the state of the channel that carries over between granules, so there is one for each channel.
+ * There are two versions, one that calculates with doubles and one with floats.
+ * @author zach jones
+ *
+ */
+abstract class Filterbank {
+
+	/** The windows for the IMDCT, for each block type, block type 2 is one of the 3 short windows */
+	static final double[][] IMDCT_WINDOW = new double[4][36];
+	/** The cosines of the 18 point DCT-IV in the long IMDCT, [output][input] */
+	static final double[][] COS_18 = new double[18][18];
+	/** The cosines of the 6 point DCT-IV in the short IMDCT, [output][input] */
+	static final double[][] COS_6 = new double[6][6];
+	/** 1 / (2 * cos(pi * (2i + 1) / (2n))), the scale of the odd half of each step of the fast DCT, indexed by n */
+	static final double[][] DCT_SCALE = new double[33][];
+	/** The synthesis window (D in the standard), the values are in units of 1/65536 */
+	private static final int[] SYNTH_WINDOW = {
+		0, -1, -1, -1, -1, -1, -1, -2, -2, -2, -2, -3, -3, -4, -4, -5,
+		-5, -6, -7, -7, -8, -9, -10, -11, -13, -14, -16, -17, -19, -21, -24, -26,
+		-29, -31, -35, -38, -41, -45, -49, -53, -58, -63, -68, -73, -79, -85, -91, -97,
+		-104, -111, -117, -125, -132, -139, -147, -154, -161, -169, -176, -183, -190, -196, -202, -208,
+		213, 218, 222, 225, 227, 228, 228, 227, 224, 221, 215, 208, 200, 189, 177, 163,
+		146, 127, 106, 83, 57, 29, -2, -36, -72, -111, -153, -197, -244, -294, -347, -401,
+		-459, -519, -581, -645, -711, -779, -848, -919, -991, -1064, -1137, -1210, -1283, -1356, -1428, -1498,
+		-1567, -1634, -1698, -1759, -1817, -1870, -1919, -1962, -2001, -2032, -2057, -2075, -2085, -2087, -2080, -2063,
+		2037, 2000, 1952, 1893, 1822, 1739, 1644, 1535, 1414, 1280, 1131, 970, 794, 605, 402, 185,
+		-45, -288, -545, -814, -1095, -1388, -1692, -2006, -2330, -2663, -3004, -3351, -3705, -4063, -4425, -4788,
+		-5153, -5517, -5879, -6237, -6589, -6935, -7271, -7597, -7910, -8209, -8491, -8755, -8998, -9219, -9416, -9585,
+		-9727, -9838, -9916, -9959, -9966, -9935, -9863, -9750, -9592, -9389, -9139, -8840, -8492, -8092, -7640, -7134,
+		6574, 5959, 5288, 4561, 3776, 2935, 2037, 1082, 70, -998, -2122, -3300, -4533, -5818, -7154, -8540,
+		-9975, -11455, -12980, -14548, -16155, -17799, -19478, -21189, -22929, -24694, -26482, -28289, -30112, -31947, -33791, -35640,
+		-37489, -39336, -41176, -43006, -44821, -46617, -48390, -50137, -51853, -53534, -55178, -56778, -58333, -59838, -61289, -62684,
+		-64019, -65290, -66494, -67629, -68692, -69679, -70590, -71420, -72169, -72835, -73415, -73908, -74313, -74630, -74856, -74992,
+		75038, 74992, 74856, 74630, 74313, 73908, 73415, 72835, 72169, 71420, 70590, 69679, 68692, 67629, 66494, 65290,
+		64019, 62684, 61289, 59838, 58333, 56778, 55178, 53534, 51853, 50137, 48390, 46617, 44821, 43006, 41176, 39336,
+		37489, 35640, 33791, 31947, 30112, 28289, 26482, 24694, 22929, 21189, 19478, 17799, 16155, 14548, 12980, 11455,
+		9975, 8540, 7154, 5818, 4533, 3300, 2122, 998, -70, -1082, -2037, -2935, -3776, -4561, -5288, -5959,
+		6574, 7134, 7640, 8092, 8492, 8840, 9139, 9389, 9592, 9750, 9863, 9935, 9966, 9959, 9916, 9838,
+		9727, 9585, 9416, 9219, 8998, 8755, 8491, 8209, 7910, 7597, 7271, 6935, 6589, 6237, 5879, 5517,
+		5153, 4788, 4425, 4063, 3705, 3351, 3004, 2663, 2330, 2006, 1692, 1388, 1095, 814, 545, 288,
+		45, -185, -402, -605, -794, -970, -1131, -1280, -1414, -1535, -1644, -1739, -1822, -1893, -1952, -2000,
+		2037, 2063, 2080, 2087, 2085, 2075, 2057, 2032, 2001, 1962, 1919, 1870, 1817, 1759, 1698, 1634,
+		1567, 1498, 1428, 1356, 1283, 1210, 1137, 1064, 991, 919, 848, 779, 711, 645, 581, 519,
+		459, 401, 347, 294, 244, 197, 153, 111, 72, 36, 2, -29, -57, -83, -106, -127,
+		-146, -163, -177, -189, -200, -208, -215, -221, -224, -227, -228, -228, -227, -225, -222, -218,
+		213, 208, 202, 196, 190, 183, 176, 169, 161, 154, 147, 139, 132, 125, 117, 111,
+		104, 97, 91, 85, 79, 73, 68, 63, 58, 53, 49, 45, 41, 38, 35, 31,
+		29, 26, 24, 21, 19, 17, 16, 14, 13, 11, 10, 9, 8, 7, 7, 6,
+		5, 5, 4, 4, 3, 3, 2, 2, 2, 2, 1, 1, 1, 1, 1, 1
+	};
+	/** The synthesis window as doubles */
+	static final double[] D = new double[512];
+
+	static {
+		//block type 0, normal
+		for(int i = 0; i < 36; i++){
+			IMDCT_WINDOW[0][i] = Math.sin(Math.PI / 36 * (i + 0.5));
+		}
+		//block type 1, start
+		for(int i = 0; i < 18; i++){
+			IMDCT_WINDOW[1][i] = Math.sin(Math.PI / 36 * (i + 0.5));
+		}
+		for(int i = 18; i < 24; i++){
+			IMDCT_WINDOW[1][i] = 1.0;
+		}
+		for(int i = 24; i < 30; i++){
+			IMDCT_WINDOW[1][i] = Math.sin(Math.PI / 12 * (i - 18 + 0.5));
+		}
+		//block type 2, short (one of the 3 windows)
+		for(int i = 0; i < 12; i++){
+			IMDCT_WINDOW[2][i] = Math.sin(Math.PI / 12 * (i + 0.5));
+		}
+		//block type 3, end
+		for(int i = 6; i < 12; i++){
+			IMDCT_WINDOW[3][i] = Math.sin(Math.PI / 12 * (i - 6 + 0.5));
+		}
+		for(int i = 12; i < 18; i++){
+			IMDCT_WINDOW[3][i] = 1.0;
+		}
+		for(int i = 18; i < 36; i++){
+			IMDCT_WINDOW[3][i] = Math.sin(Math.PI / 36 * (i + 0.5));
+		}
+
+		for(int n = 0; n < 18; n++){
+			for(int k = 0; k < 18; k++){
+				COS_18[n][k] = Math.cos(Math.PI / 18 * (n + 0.5) * (k + 0.5));
+			}
+		}
+		for(int n = 0; n < 6; n++){
+			for(int k = 0; k < 6; k++){
+				COS_6[n][k] = Math.cos(Math.PI / 6 * (n + 0.5) * (k + 0.5));
+			}
+		}
+		for(int n = 2; n <= 32; n *= 2){
+			DCT_SCALE[n] = new double[n / 2];
+			for(int i = 0; i < n / 2; i++){
+				DCT_SCALE[n][i] = 1.0 / (2 * Math.cos(Math.PI * (2 * i + 1) / (2 * n)));
+			}
+		}
+		for(int i = 0; i < 512; i++){
+			D[i] = SYNTH_WINDOW[i] / 65536.0;
+		}
+	}
+
+	/**
+	 * Creates the filterbank for one channel.
+	 * @param singlePrecision If the calculations are done with floats, otherwise doubles.
+	 * @return The new filterbank, with empty state.
+	 */
+	static Filterbank create(boolean singlePrecision){
+		return singlePrecision ? new FloatFilterbank() : new DoubleFilterbank();
+	}
+
+	/** Clears the state from the last granules, used when moving to a different place in the file */
+	abstract void reset();
+
+	/**
+	 * Turns a granule of frequency lines into 576 PCM samples.
+	 * @param xr The frequency lines, after alias reduction (short blocks are reordered).
+	 * @param info The side information of the granule.
+	 * @param pcm The array to write the samples to, as 16 bit little endian.
+	 * @param offset The index in pcm of the first sample of the granule (for channel 0).
+	 * @param ch The channel of this filterbank.
+	 * @param channels The number of channels interleaved in pcm.
+	 */
+	abstract void process(double[] xr, MP3Frame.GranuleInfo info, byte[] pcm, int offset, int ch, int channels);
+
+	/** Gets the block type of each subband of the granule, the lowest 2 subbands of mixed blocks are normal */
+	static int getBlockType(MP3Frame.GranuleInfo info, int sb){
+		if(!info.windowSwitching || (info.mixedBlocks && sb < 2)){
+			return 0;
+		}
+		return info.switchType.ordinal();
+	}
+
+	/** Gets the number of subbands that can have values after the IMDCT, the rest only have the overlap */
+	static int getActiveSubbands(double[] xr){
+		int last = xr.length - 1;
+		while(last >= 0 && xr[last] == 0){
+			last--;
+		}
+		return (last + 18) / 18;
+	}
+
+	/**
+	 * Writes a sample, clipped to 16 bits.
+	 * @param pcm The array to write to.
+	 * @param index The index in pcm of the low byte.
+	 * @param value The sample, from -1 to 1.
+	 */
+	static void writeSample(byte[] pcm, int index, double value){
+		int sample = (int)Math.round(value * 32768);
+		if(sample > Short.MAX_VALUE){
+			sample = Short.MAX_VALUE;
+		} else if(sample < Short.MIN_VALUE){
+			sample = Short.MIN_VALUE;
+		}
+		pcm[index] = (byte)sample;
+		pcm[index + 1] = (byte)(sample >> 8);
+	}
+}
@@ -0,0 +1,269 @@
+package runner;
+
+import java.util.Arrays;
+
+import runner.MP3Frame.GranuleInfo;
+
+/**
+ * The IMDCT and synthesis filterbank of one channel, calculated with floats.
+ * This is a little less accurate than DoubleFilterbank (about 1 bit of the 16 bit output),
+ * but the state and tables take half the space.
+ * The 36 point IMDCT is done with an 18 point DCT-IV and its symmetry (the 12 point with a 6 point DCT-IV),
+ * and the synthesis matrixing is done with a fast 32 point DCT (Lee's algorithm).
+ * Nothing is allocated after construction.
+ * @author zach jones
+ *
+ */
+class FloatFilterbank extends Filterbank {
+
+	/** The IMDCT windows as floats */
+	private static final float[][] WINDOW_F = toFloat(IMDCT_WINDOW);
+	/** The cosines of the 18 point DCT-IV as floats */
+	private static final float[][] COS_18_F = toFloat(COS_18);
+	/** The cosines of the 6 point DCT-IV as floats */
+	private static final float[][] COS_6_F = toFloat(COS_6);
+	/** The scales of the fast DCT as floats */
+	private static final float[][] DCT_SCALE_F = toFloat(DCT_SCALE);
+	/** The synthesis window as floats */
+	private static final float[] D_F = toFloat(new double[][]{D})[0];
+
+	/** The frequency lines of the granule, as floats */
+	private final float[] lines;
+	/** The second half of the IMDCT output of the last granule, added to the next one */
+	private final float[] overlap;
+	/** The subband samples of the granule, 18 for each subband */
+	private final float[] samples;
+	/** The output of a DCT-IV */
+	private final float[] dct4;
+	/** The windowed output of the IMDCT of a subband */
+	private final float[] imdct;
+	/** The 32 subband samples of one time slot, then the DCT of them */
+	private final float[] slot;
+	/** Scratch space for the fast DCT */
+	private final float[] dctTemp;
+	/** The shifting buffer of the synthesis filter, used as a ring */
+	private final float[] v;
+	/** The index in v of the newest values */
+	private int vOffset;
+
+	/** Creates the filterbank with empty state */
+	FloatFilterbank(){
+		this.lines = new float[576];
+		this.overlap = new float[576];
+		this.samples = new float[576];
+		this.dct4 = new float[18];
+		this.imdct = new float[36];
+		this.slot = new float[32];
+		this.dctTemp = new float[32];
+		this.v = new float[1024];
+		this.vOffset = 0;
+	}
+
+	@Override
+	void reset(){
+		Arrays.fill(overlap, 0);
+		Arrays.fill(v, 0);
+		vOffset = 0;
+	}
+
+	@Override
+	void process(double[] xr, GranuleInfo info, byte[] pcm, int offset, int ch, int channels){
+		for(int i = 0; i < 576; i++){
+			lines[i] = (float)xr[i];
+		}
+		hybrid(lines, getActiveSubbands(xr), info);
+		synthesize(pcm, offset, ch, channels);
+	}
+
+	/** Does the IMDCT of each subband, adds the overlap, and inverts the odd subbands */
+	private void hybrid(float[] xr, int active, GranuleInfo info){
+		for(int sb = 0; sb < 32; sb++){
+			int base = sb * 18;
+			if(sb >= active){
+				//all the lines are 0, so only the overlap is left
+				for(int i = 0; i < 18; i++){
+					samples[base + i] = overlap[base + i];
+					overlap[base + i] = 0;
+				}
+			} else {
+				int type = getBlockType(info, sb);
+				if(type == 2){
+					imdctShort(xr, base);
+				} else {
+					imdctLong(xr, base, WINDOW_F[type]);
+				}
+				for(int i = 0; i < 18; i++){
+					samples[base + i] = imdct[i] + overlap[base + i];
+					overlap[base + i] = imdct[i + 18];
+				}
+			}
+			if((sb & 1) == 1){
+				//frequency inversion, every other sample of the odd subbands is negated
+				for(int i = 1; i < 18; i += 2){
+					samples[base + i] = -samples[base + i];
+				}
+			}
+		}
+	}
+
+	/** The 36 point IMDCT of the 18 lines of a subband, into imdct */
+	private void imdctLong(float[] xr, int base, float[] window){
+		for(int n = 0; n < 18; n++){
+			float sum = 0;
+			float[] cos = COS_18_F[n];
+			for(int k = 0; k < 18; k++){
+				sum += xr[base + k] * cos[k];
+			}
+			dct4[n] = sum;
+		}
+		//the IMDCT is the DCT-IV from the middle, with c(35 - n) = -c(n) and c(n + 36) = -c(n)
+		for(int i = 0; i < 9; i++){
+			imdct[i] = dct4[9 + i] * window[i];
+			imdct[27 + i] = -dct4[i] * window[27 + i];
+		}
+		for(int i = 9; i < 27; i++){
+			imdct[i] = -dct4[26 - i] * window[i];
+		}
+	}
+
+	/** The 3 overlapping 12 point IMDCTs of the interleaved lines of a short block subband, into imdct */
+	private void imdctShort(float[] xr, int base){
+		Arrays.fill(imdct, 0);
+		float[] window = WINDOW_F[2];
+		for(int w = 0; w < 3; w++){
+			for(int n = 0; n < 6; n++){
+				float sum = 0;
+				float[] cos = COS_6_F[n];
+				for(int k = 0; k < 6; k++){
+					sum += xr[base + 3 * k + w] * cos[k];
+				}
+				dct4[n] = sum;
+			}
+			int start = 6 + 6 * w;
+			for(int i = 0; i < 3; i++){
+				imdct[start + i] += dct4[3 + i] * window[i];
+				imdct[start + 9 + i] -= dct4[i] * window[9 + i];
+			}
+			for(int i = 3; i < 9; i++){
+				imdct[start + i] -= dct4[8 - i] * window[i];
+			}
+		}
+	}
+
+	/** Runs the 18 time slots of subband samples through the synthesis filter */
+	private void synthesize(byte[] pcm, int offset, int ch, int channels){
+		for(int t = 0; t < 18; t++){
+			for(int k = 0; k < 32; k++){
+				slot[k] = samples[k * 18 + t];
+			}
+			dct32(slot, dctTemp);
+
+			//shift in 64 new values, v[i] is the DCT at 16 + i, which is symmetric around 32 and 64
+			int pos = (vOffset - 64) & 1023;
+			vOffset = pos;
+			for(int i = 0; i < 16; i++){
+				v[pos + i] = slot[16 + i];
+				v[pos + 48 + i] = -slot[i];
+			}
+			v[pos + 16] = 0;
+			for(int i = 17; i < 48; i++){
+				v[pos + i] = -slot[48 - i];
+			}
+
+			//window the 16 sets of 32 values
+			for(int j = 0; j < 32; j++){
+				float sum = 0;
+				for(int i = 0; i < 8; i++){
+					sum += v[(pos + 128 * i + j) & 1023] * D_F[64 * i + j];
+					sum += v[(pos + 128 * i + 96 + j) & 1023] * D_F[64 * i + 32 + j];
+				}
+				writeSample(pcm, offset + ((t * 32 + j) * channels + ch) * 2, sum);
+			}
+		}
+	}
+
+	/**
+	 * The DCT-II (not normalized) of 32 values, in place: X[k] = sum of x[i] * cos(pi * (2i + 1) * k / 64).
+	 * This is Lee's fast DCT, each size splits into 2 DCTs of half the size,
+	 * one of the sums and one of the scaled differences of the 2 halves.
+	 * There is a method for each size (not recursion) so they can all be inlined.
+	 * @param x The values.
+	 * @param temp The scratch space, 32 long.
+	 */
+	private static void dct32(float[] x, float[] temp){
+		split(x, 0, 32, temp);
+		//x is free now, so it is the scratch space for the halves
+		dct16(temp, 0, x);
+		dct16(temp, 16, x);
+		merge(x, 0, 32, temp);
+	}
+
+	/** The DCT of the 16 values at off, see dct32 */
+	private static void dct16(float[] x, int off, float[] temp){
+		split(x, off, 16, temp);
+		dct8(temp, off, x);
+		dct8(temp, off + 8, x);
+		merge(x, off, 16, temp);
+	}
+
+	/** The DCT of the 8 values at off, see dct32 */
+	private static void dct8(float[] x, int off, float[] temp){
+		split(x, off, 8, temp);
+		dct4(temp, off, x);
+		dct4(temp, off + 4, x);
+		merge(x, off, 8, temp);
+	}
+
+	/** The DCT of the 4 values at off, see dct32 */
+	private static void dct4(float[] x, int off, float[] temp){
+		split(x, off, 4, temp);
+		dct2(temp, off);
+		dct2(temp, off + 2);
+		merge(x, off, 4, temp);
+	}
+
+	/** The DCT of the 2 values at off */
+	private static void dct2(float[] x, int off){
+		float a = x[off];
+		float b = x[off + 1];
+		x[off] = a + b;
+		x[off + 1] = (a - b) * DCT_SCALE_F[2][0];
+	}
+
+	/** Puts the sums of the 2 halves of x into the first half of temp, and the scaled differences into the second half */
+	private static void split(float[] x, int off, int n, float[] temp){
+		int half = n / 2;
+		float[] scale = DCT_SCALE_F[n];
+		for(int i = 0; i < half; i++){
+			float a = x[off + i];
+			float b = x[off + n - 1 - i];
+			temp[off + i] = a + b;
+			temp[off + half + i] = (a - b) * scale[i];
+		}
+	}
+
+	/** Puts the DCfloat back together from the 2 halves in temp, the even outputs are the first half */
+	private static void merge(float[] x, int off, int n, float[] temp){
+		int half = n / 2;
+		for(int k = 0; k < half - 1; k++){
+			x[off + 2 * k] = temp[off + k];
+			x[off + 2 * k + 1] = temp[off + half + k] + temp[off + half + k + 1];
+		}
+		x[off + n - 2] = temp[off + half - 1];
+		x[off + n - 1] = temp[off + n - 1];
+	}
+
+	/** Copies a table of doubles to floats */
+	private static float[][] toFloat(double[][] table){
+		float[][] copy = new float[table.length][];
+		for(int i = 0; i < table.length; i++){
+			if(table[i] != null){
+				copy[i] = new float[table[i].length];
+				for(int j = 0; j < table[i].length; j++){
+					copy[i][j] = (float)table[i][j];
+				}
+			}
+		}
+		return copy;
+	}
+}
@@ -0,0 +1,62 @@
+package runner;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import model.Player;
+
+/**
+ * The mp3 format, MPEG-1 layer III frames, which can start with an ID3v2 tag.
+ * @author zach jones
+ *
+ */
+public class MP3Codec implements Codec {
+
+	@Override
+	public String getName() {
+		return "MP3";
+	}
+
+	@Override
+	public int probe(ByteBuffer header, String filename) {
+		byte[] data = new byte[header.limit()];
+		for(int i = 0; i < data.length; i++){
+			data[i] = header.get(i);
+		}
+		int start = 0;
+		int score = 0;
+		if(data.length >= 10 && data[0] == 'I' && data[1] == 'D' && data[2] == '3'){
+			//almost all files with an ID3v2 tag are mp3s, the first frame is usually past the header
+			start = (int)Math.min(MP3SeekIndex.getTagSize(data), Integer.MAX_VALUE);
+			score = 80;
+		}
+		MP3Frame first = getFrame(data, start);
+		if(first != null){
+			//a sync word can happen by chance, so it is more certain if there is a frame after it
+			MP3Frame second = getFrame(data, start + first.getSize());
+			score = second != null ? 100 : Math.max(score, 70);
+		}
+		if(score == 0 && filename.toLowerCase().endsWith(".mp3")){
+			return 10;
+		}
+		return score;
+	}
+
+	/** Gets the MPEG-1 layer III frame at the offset, or null if there isn't one or it's past the end */
+	private static MP3Frame getFrame(byte[] data, int offset){
+		if(offset < 0 || offset + 4 > data.length){
+			return null;
+		}
+		try {
+			MP3Frame frame = new MP3Frame(data, offset);
+			return frame.isMpeg1() ? frame : null;
+		} catch(IOException e){
+			return null;
+		}
+	}
+
+	@Override
+	public AudioRun open(String filename, Player p, OpenProgress progress) throws IOException {
+		return new MP3Runner(filename, p, MP3Runner.DecodeMode.STREAM, p == null ? null : p.getDiskCache(), progress);
+	}
+}
@@ -0,0 +1,459 @@
+package runner;
+
+import java.util.Arrays;
+import java.util.List;
+
+import runner.MP3Frame.GranuleInfo;
+import runner.MP3Frame.WindowSwitching;
+
+/**
+ * Decodes MPEG-1 layer III frames into 16 bit little endian PCM samples.
+ * This keeps the state that carries over from one frame to the next (the bit reservoir,
+ * the overlap of the IMDCT, and the synthesis filter), so the frames must be decoded in order.
+ * The steps follow the decoder in ISO 11172-3: 
+ * huffman decoding, requantization, stereo processing, reordering, alias reduction,
+ * then the IMDCT and the polyphase synthesis filterbank (in Filterbank).
+ * @author zach jones
+ *
+ */
+class MP3Decoder {
+
+	/** The number of samples (on each channel) in a frame */
+	static final int SAMPLES_PER_FRAME = 1152;
+	/** The number of frequency lines in a granule */
+	private static final int LINES = 576;
+
+	/** The scalefactor band boundaries for long blocks, for 44.1, 48 and 32 kHz */
+	private static final int[][] SFB_LONG = {
+		{0, 4, 8, 12, 16, 20, 24, 30, 36, 44, 52, 62, 74, 90, 110, 134, 162, 196, 238, 288, 342, 418, 576},
+		{0, 4, 8, 12, 16, 20, 24, 30, 36, 42, 50, 60, 72, 88, 106, 128, 156, 190, 230, 276, 330, 384, 576},
+		{0, 4, 8, 12, 16, 20, 24, 30, 36, 44, 54, 66, 82, 102, 126, 156, 194, 240, 296, 364, 448, 550, 576}
+	};
+	/** The scalefactor band boundaries for short blocks (in one window), for 44.1, 48 and 32 kHz */
+	private static final int[][] SFB_SHORT = {
+		{0, 4, 8, 12, 16, 22, 30, 40, 52, 66, 84, 106, 136, 192},
+		{0, 4, 8, 12, 16, 22, 28, 38, 50, 64, 80, 100, 126, 192},
+		{0, 4, 8, 12, 16, 22, 30, 42, 58, 78, 104, 138, 180, 192}
+	};
+	/** The amount added to the long block scalefactors when the preflag is set */
+	private static final int[] PRETAB = {0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 3, 3, 3, 2, 0};
+	/** The first long band in each of the scalefactor groups that can be reused (scfsi) */
+	private static final int[] SCFSI_BANDS = {0, 6, 11, 16, 21};
+
+	/** The coefficients of the alias reduction butterflies */
+	private static final double[] CS = new double[8], CA = new double[8];
+	/** |x|^(4/3) for the possible quantized values */
+	private static final double[] POW43 = new double[8207];
+
+	static {
+		double[] c = {-0.6, -0.535, -0.33, -0.185, -0.095, -0.041, -0.0142, -0.0037};
+		for(int i = 0; i < 8; i++){
+			double sq = Math.sqrt(1.0 + c[i] * c[i]);
+			CS[i] = 1.0 / sq;
+			CA[i] = c[i] / sq;
+		}
+		for(int i = 0; i < POW43.length; i++){
+			POW43[i] = Math.pow(i, 4.0 / 3.0);
+		}
+	}
+
+	/** The main data of the last few frames */
+	private final BitReservoir reservoir;
+	/** The quantized values of the granule being decoded */
+	private final int[] quantized;
+	/** The frequency lines of the granule being decoded, for each channel */
+	private final double[][] lines;
+	/** The number of lines that could be non-zero, for each channel */
+	private final int[] nonZero;
+	/** The long block scalefactors, [channel][band] */
+	private final int[][] scalefacLong;
+	/** The short block scalefactors, [channel][band][window] */
+	private final int[][][] scalefacShort;
+	/** The intensity stereo position of each line, -1 if the line is not intensity coded */
+	private final int[] isPositions;
+	/** A copy of the lines to reorder from */
+	private final double[] reordered;
+	/** The IMDCT and synthesis filterbank of each channel */
+	private final Filterbank[] filterbanks;
+
+	/** Creates a decoder that calculates with doubles, starting with empty state */
+	MP3Decoder(){
+		this(false);
+	}
+
+	/**
+	 * Creates a decoder, starting with empty state.
+	 * @param singlePrecision If the IMDCT and synthesis are calculated with floats instead of doubles.
+	 */
+	MP3Decoder(boolean singlePrecision){
+		this.reservoir = new BitReservoir();
+		this.quantized = new int[LINES];
+		this.lines = new double[2][LINES];
+		this.nonZero = new int[2];
+		this.scalefacLong = new int[2][22];
+		this.scalefacShort = new int[2][13][3];
+		this.isPositions = new int[LINES];
+		this.reordered = new double[LINES];
+		this.filterbanks = new Filterbank[]{ Filterbank.create(singlePrecision), Filterbank.create(singlePrecision) };
+	}
+
+	/** Clears the state that carries over between frames, used when moving to a different place in the file */
+	void reset(){
+		reservoir.reset();
+		filterbanks[0].reset();
+		filterbanks[1].reset();
+	}
+
+	/**
+	 * Adds a frame's main data to the bit reservoir without decoding it.
+	 * This is used to get the main data of the frames before the place to start decoding.
+	 * @param frame The frame to skip.
+	 */
+	void skip(MP3Frame frame){
+		reservoir.addFrame(frame);
+	}
+
+	/**
+	 * Finds the first frame that has main data needed to decode a frame.
+	 * Decoding from that frame (with skip) gives the same main data as decoding from the start of the file.
+	 * @param frames All the frames of the file.
+	 * @param index The index of the frame to decode.
+	 * @return The index of the first frame to skip.
+	 */
+	static int getReservoirStart(List<MP3Frame> frames, int index){
+		int needed = frames.get(index).getMainDataBegin();
+		int start = index;
+		while(needed > 0 && start > 0){
+			start--;
+			needed -= frames.get(start).getMainDataSize();
+		}
+		return start;
+	}
+
+	/**
+	 * Decodes a frame into SAMPLES_PER_FRAME samples on each channel.
+	 * If the frame's main data is not all in the reservoir, the frame is decoded as silence.
+	 * @param frame The frame to decode, it must be MPEG-1.
+	 * @param pcm The array to write the samples to, as 16 bit little endian, channels interleaved.
+	 * @param offset The index in pcm of the first byte.
+	 */
+	void decode(MP3Frame frame, byte[] pcm, int offset){
+		int channels = frame.getChannels();
+		int sfIndex = frame.getSampleRate() == 48000 ? 1 : (frame.getSampleRate() == 32000 ? 2 : 0);
+		boolean hasData = reservoir.addFrame(frame);
+
+		for(int gr = 0; gr < 2; gr++){
+			for(int ch = 0; ch < channels; ch++){
+				GranuleInfo info = frame.getGranule(gr, ch);
+				if(hasData){
+					int end = reservoir.getBitIndex() + info.sizeSF_HE;
+					readScalefactors(frame, info, gr, ch);
+					readHuffman(info, sfIndex, end, ch);
+					//there can be stuffing bits after the huffman data
+					reservoir.setBitIndex(end);
+					requantize(info, sfIndex, ch);
+				} else {
+					Arrays.fill(lines[ch], 0);
+					nonZero[ch] = 0;
+				}
+			}
+
+			if(channels == 2 && (frame.isMSStereo() || frame.isIntensityStereo())){
+				processStereo(frame, frame.getGranule(gr, 0), frame.getGranule(gr, 1), sfIndex);
+			}
+
+			for(int ch = 0; ch < channels; ch++){
+				GranuleInfo info = frame.getGranule(gr, ch);
+				double[] xr = lines[ch];
+				boolean isShort = info.windowSwitching && info.switchType == WindowSwitching.SHORT_3;
+				if(isShort){
+					reorder(xr, info.mixedBlocks, sfIndex);
+				}
+				antialias(xr, info);
+				filterbanks[ch].process(xr, info, pcm, offset + gr * LINES * channels * 2, ch, channels);
+			}
+		}
+	}
+
+	/** Reads the scalefactors of a granule into scalefacLong and scalefacShort */
+	private void readScalefactors(MP3Frame frame, GranuleInfo info, int gr, int ch){
+		int slen1 = info.scaleFactorBits1;
+		int slen2 = info.scaleFactorBits2;
+		int[] sfl = scalefacLong[ch];
+		int[][] sfs = scalefacShort[ch];
+		if(info.windowSwitching && info.switchType == WindowSwitching.SHORT_3){
+			int sfb = 0;
+			if(info.mixedBlocks){
+				//the first 8 long bands, then the short bands from 3
+				for(; sfb < 8; sfb++){
+					sfl[sfb] = reservoir.getBits(slen1);
+				}
+				sfb = 3;
+			}
+			for(; sfb < 12; sfb++){
+				int bits = sfb < 6 ? slen1 : slen2;
+				for(int w = 0; w < 3; w++){
+					sfs[sfb][w] = reservoir.getBits(bits);
+				}
+			}
+			for(int w = 0; w < 3; w++){
+				sfs[12][w] = 0;
+			}
+		} else {
+			for(int group = 0; group < 4; group++){
+				if(gr == 1 && frame.isScalefactorReused(ch, group)){
+					//keep the scalefactors of the first granule
+					continue;
+				}
+				int bits = group < 2 ? slen1 : slen2;
+				for(int sfb = SCFSI_BANDS[group]; sfb < SCFSI_BANDS[group + 1]; sfb++){
+					sfl[sfb] = reservoir.getBits(bits);
+				}
+			}
+			sfl[21] = 0;
+		}
+	}
+
+	/**
+	 * Reads the huffman coded values of a granule into quantized.
+	 * @param end The bit index of the end of the granule's main data.
+	 */
+	private void readHuffman(GranuleInfo info, int sfIndex, int end, int ch){
+		int bigValues = Math.min(info.sizeBigValues * 2, LINES);
+		int[] sfb = SFB_LONG[sfIndex];
+		int region1 = Math.min(sfb[Math.min(info.region1Bands, 22)], bigValues);
+		int region2 = Math.min(sfb[Math.min(info.region1Bands + info.region2Bands, 22)], bigValues);
+		int[] tables = info.tableSelect;
+		BitReader bits = reservoir.getReader();
+
+		int i = 0;
+		for(; i < region1; i += 2){
+			MP3Huffman.decodePair(tables[0], bits, quantized, i);
+		}
+		for(; i < region2; i += 2){
+			MP3Huffman.decodePair(tables[1], bits, quantized, i);
+		}
+		int table3 = tables.length > 2 ? tables[2] : tables[1];
+		for(; i < bigValues; i += 2){
+			MP3Huffman.decodePair(table3, bits, quantized, i);
+		}
+
+		//the count1 region, values of -1, 0 or 1 until the end of the data
+		while(i + 4 <= LINES && bits.getBitIndex() < end){
+			MP3Huffman.decodeQuad(info.altTable1, bits, quantized, i);
+			i += 4;
+		}
+		if(bits.getBitIndex() > end){
+			//the last quad ran past the end of the data, so it is not part of this granule
+			i -= 4;
+		}
+		nonZero[ch] = i;
+		for(; i < LINES; i++){
+			quantized[i] = 0;
+		}
+	}
+
+	/** Turns the quantized values into the frequency lines of the channel */
+	private void requantize(GranuleInfo info, int sfIndex, int ch){
+		double[] xr = lines[ch];
+		int count = nonZero[ch];
+		double scale = info.scaleFactorScale == 2.0 ? 1.0 : 0.5;
+		double globalGain = Math.pow(2.0, 0.25 * (info.sizeGlobalGain - 210));
+		boolean isShort = info.windowSwitching && info.switchType == WindowSwitching.SHORT_3;
+
+		int i = 0;
+		if(!isShort || info.mixedBlocks){
+			int[] bands = SFB_LONG[sfIndex];
+			//mixed blocks have long bands up to 36 lines
+			int lastBand = isShort ? 8 : 22;
+			int[] sfl = scalefacLong[ch];
+			for(int sfb = 0; sfb < lastBand && i < count; sfb++){
+				int sf = sfl[sfb] + (info.amplifyHighFreqs ? PRETAB[sfb] : 0);
+				double gain = globalGain * Math.pow(2.0, -scale * sf);
+				int end = Math.min(bands[sfb + 1], count);
+				for(; i < end; i++){
+					xr[i] = requantize(quantized[i], gain);
+				}
+			}
+		}
+		if(isShort){
+			int[] bands = SFB_SHORT[sfIndex];
+			int[][] sfs = scalefacShort[ch];
+			for(int sfb = info.mixedBlocks ? 3 : 0; sfb < 13 && i < count; sfb++){
+				int width = bands[sfb + 1] - bands[sfb];
+				for(int w = 0; w < 3; w++){
+					double gain = Math.pow(2.0, 0.25 * (info.sizeGlobalGain - 210 - 8 * info.subblockGains[w])
+							- scale * sfs[sfb][w]);
+					int end = Math.min(i + width, count);
+					for(; i < end; i++){
+						xr[i] = requantize(quantized[i], gain);
+					}
+				}
+			}
+		}
+		for(; i < LINES; i++){
+			xr[i] = 0;
+		}
+	}
+
+	/** Requantizes a value, sign(value) * |value|^(4/3) * gain */
+	private static double requantize(int value, double gain){
+		if(value == 0){
+			return 0;
+		}
+		return value > 0 ? POW43[value] * gain : -POW43[-value] * gain;
+	}
+
+	/** Does the middle/side and intensity stereo processing of a granule */
+	private void processStereo(MP3Frame frame, GranuleInfo left, GranuleInfo right, int sfIndex){
+		double[] xr0 = lines[0];
+		double[] xr1 = lines[1];
+		Arrays.fill(isPositions, -1);
+		if(frame.isIntensityStereo()){
+			findIntensityBands(right, sfIndex);
+		}
+
+		boolean ms = frame.isMSStereo();
+		int count = Math.max(nonZero[0], nonZero[1]);
+		if(frame.isIntensityStereo()){
+			//the intensity coded lines are copied from the left channel
+			count = LINES;
+		}
+		for(int i = 0; i < count; i++){
+			int position = isPositions[i];
+			if(position >= 0){
+				double ratio = Math.tan(position * Math.PI / 12);
+				double value = xr0[i];
+				if(position == 6){
+					//tan(pi / 2) is infinite, all of it goes to the left
+					xr0[i] = value;
+					xr1[i] = 0;
+				} else {
+					xr0[i] = value * ratio / (1 + ratio);
+					xr1[i] = value / (1 + ratio);
+				}
+			} else if(ms){
+				double m = xr0[i];
+				double s = xr1[i];
+				xr0[i] = (m + s) * Math.sqrt(0.5);
+				xr1[i] = (m - s) * Math.sqrt(0.5);
+			}
+		}
+		nonZero[0] = count;
+		nonZero[1] = count;
+	}
+
+	/**
+	 * Finds the lines that use intensity stereo, these are the bands above the last non-zero value of the right channel.
+	 * Fills in isPositions with the intensity position of these lines.
+	 */
+	private void findIntensityBands(GranuleInfo right, int sfIndex){
+		double[] xr1 = lines[1];
+		boolean isShort = right.windowSwitching && right.switchType == WindowSwitching.SHORT_3;
+		if(isShort){
+			int[] bands = SFB_SHORT[sfIndex];
+			int[][] sfs = scalefacShort[1];
+			int firstBand = right.mixedBlocks ? 3 : 0;
+			boolean shortAllZero = true;
+			for(int w = 0; w < 3; w++){
+				//find the last band in the window with a value
+				int lastBand = firstBand - 1;
+				for(int sfb = firstBand; sfb < 13; sfb++){
+					int width = bands[sfb + 1] - bands[sfb];
+					int start = 3 * bands[sfb] + w * width;
+					for(int j = 0; j < width; j++){
+						if(xr1[start + j] != 0){
+							lastBand = sfb;
+							break;
+						}
+					}
+				}
+				if(lastBand >= firstBand){
+					shortAllZero = false;
+				}
+				for(int sfb = lastBand + 1; sfb < 13; sfb++){
+					int width = bands[sfb + 1] - bands[sfb];
+					int start = 3 * bands[sfb] + w * width;
+					//the last band uses the position of the one below it
+					int position = sfs[sfb < 12 ? sfb : 11][w];
+					markIntensity(start, width, position);
+				}
+			}
+			if(right.mixedBlocks && shortAllZero){
+				markIntensityLong(SFB_LONG[sfIndex], 8);
+			}
+		} else {
+			markIntensityLong(SFB_LONG[sfIndex], 22);
+		}
+	}
+
+	/** Marks the long bands above the last non-zero value of the right channel as intensity coded */
+	private void markIntensityLong(int[] bands, int numBands){
+		double[] xr1 = lines[1];
+		int last = bands[numBands] - 1;
+		while(last >= 0 && xr1[last] == 0){
+			last--;
+		}
+		int firstBand = 0;
+		while(firstBand < numBands && bands[firstBand] <= last){
+			firstBand++;
+		}
+		int[] sfl = scalefacLong[1];
+		for(int sfb = firstBand; sfb < numBands; sfb++){
+			int position = sfl[sfb < 21 ? sfb : 20];
+			markIntensity(bands[sfb], bands[sfb + 1] - bands[sfb], position);
+		}
+	}
+
+	/** Sets the intensity position of the lines, an illegal position (7) is left as not intensity coded */
+	private void markIntensity(int start, int width, int position){
+		if(position == 7){
+			return;
+		}
+		for(int j = 0; j < width; j++){
+			isPositions[start + j] = position;
+		}
+	}
+
+	/**
+	 * Reorders the short block lines so the 3 windows of each subband are interleaved.
+	 * The huffman data is ordered by band, then window, the IMDCT needs it by subband.
+	 */
+	private void reorder(double[] xr, boolean mixed, int sfIndex){
+		int[] bands = SFB_SHORT[sfIndex];
+		double[] temp = reordered;
+		int sfb = mixed ? 3 : 0;
+		int start = 3 * bands[sfb];
+		System.arraycopy(xr, start, temp, start, LINES - start);
+		for(; sfb < 13; sfb++){
+			int width = bands[sfb + 1] - bands[sfb];
+			int base = 3 * bands[sfb];
+			for(int w = 0; w < 3; w++){
+				for(int j = 0; j < width; j++){
+					xr[base + 3 * j + w] = temp[base + w * width + j];
+				}
+			}
+		}
+	}
+
+	/** Does the alias reduction butterflies between the subbands of long blocks */
+	private static void antialias(double[] xr, GranuleInfo info){
+		int lastSubband = 32;
+		if(info.windowSwitching && info.switchType == WindowSwitching.SHORT_3){
+			if(!info.mixedBlocks){
+				return;
+			}
+			//only between the two long subbands and the first short subband
+			lastSubband = 2;
+		}
+		for(int sb = 1; sb < lastSubband; sb++){
+			int boundary = sb * 18;
+			for(int i = 0; i < 8; i++){
+				double lower = xr[boundary - 1 - i];
+				double upper = xr[boundary + i];
+				xr[boundary - 1 - i] = lower * CS[i] - upper * CA[i];
+				xr[boundary + i] = upper * CS[i] + lower * CA[i];
+			}
+		}
+	}
+}
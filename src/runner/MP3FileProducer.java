@@ -0,0 +1,261 @@
+package runner;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import model.StreamPCMSource;
+
+/**
+ * Reads the frames of an mp3 file from a channel and decodes them in order, for the StreamPCMSource.
+ * The offsets of the frames are added to the index as they are read, so seeking back is exact.
+ * Seeking past the frames in the index scans the headers up to the frame, so every seek is exact.
+ * startIndexing scans the rest of the headers on another thread, so later seeks don't have to.
+ * If the file has a LAME tag, the encoder delay and padding are cut off, so the samples are the ones that were encoded.
+ * @author zach jones
+ *
+ */
+class MP3FileProducer implements StreamPCMSource.Producer {
+
+	/** The most frames before a frame that can hold its main data, 511 bytes of the smallest frames */
+	private static final int RESERVOIR_FRAMES = 9;
+
+	/** The mp3 file */
+	private final Path path;
+	/** The frames of the file */
+	private final MP3FrameReader reader;
+	/** The offsets of the frames that were read */
+	private final MP3SeekIndex index;
+	/** The decoder, which keeps the state between frames */
+	private final MP3Decoder decoder;
+	/** The decoded samples of the current frame */
+	private final byte[] decoded;
+	/** The index in decoded of the next sample to produce */
+	private int decodedIndex;
+	/** The number of bytes in a sample on all channels */
+	private final int frameSize;
+	/** The index of the next frame to read */
+	private int next;
+	/** The number of decoded samples before the first one that is produced */
+	private final int startSkip;
+	/** The number of samples to produce, after the start is skipped */
+	private final long length;
+	/** The index of the next sample to produce, not counting the skipped ones */
+	private long position;
+	/** The number of decoded samples to throw away before producing, for the start of the file */
+	private int toSkip;
+	/** If this is closed, which stops the indexing thread */
+	private volatile boolean isClosed;
+
+	/**
+	 * Creates a producer that starts at the first audio frame.
+	 * @param path The mp3 file, opened again to index it.
+	 * @param reader The reader for the file, this is closed with the producer.
+	 * @param index The index of the file, this is filled in as the frames are read.
+	 * @param frameSize The number of bytes in a sample on all channels.
+	 * @param singlePrecision If the IMDCT and synthesis are calculated with floats instead of doubles.
+	 */
+	MP3FileProducer(Path path, MP3FrameReader reader, MP3SeekIndex index, int frameSize, boolean singlePrecision){
+		this.path = path;
+		this.reader = reader;
+		this.index = index;
+		this.frameSize = frameSize;
+		this.decoder = new MP3Decoder(singlePrecision);
+		this.decoded = new byte[MP3Decoder.SAMPLES_PER_FRAME * frameSize];
+		this.decodedIndex = decoded.length;
+		this.startSkip = index.getStartSkip();
+		this.length = index.isGapless() ? index.getGaplessLength() : Long.MAX_VALUE;
+		this.position = 0;
+		this.toSkip = startSkip;
+		moveTo(0);
+	}
+
+	/**
+	 * Opens a file to be decoded from the first frame, only the first frame is read now.
+	 * @param path The mp3 file.
+	 * @return The producer, the index has the length from the Xing or VBRI header, or estimated from the bitrate.
+	 * @throws IOException If there is an error reading the file, or there are no frames.
+	 */
+	static MP3FileProducer open(Path path) throws IOException {
+		return open(path, false);
+	}
+
+	/**
+	 * Opens a file to be decoded from the first frame, only the first frame is read now.
+	 * @param path The mp3 file.
+	 * @param singlePrecision If the IMDCT and synthesis are calculated with floats instead of doubles.
+	 * @return The producer, the index has the length from the Xing or VBRI header, or estimated from the bitrate.
+	 * @throws IOException If there is an error reading the file, or there are no frames.
+	 */
+	static MP3FileProducer open(Path path, boolean singlePrecision) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			byte[] header = new byte[10];
+			channel.read(ByteBuffer.wrap(header), 0);
+			long start = MP3SeekIndex.getTagSize(header);
+			System.out.println("Byte index of first frame: " + start);
+
+			MP3FrameReader reader = new MP3FrameReader(channel, start);
+			MP3Frame first = reader.next();
+			if(first == null){
+				throw new IOException("There are no audio frames in the file.");
+			}
+			//an ID3v1 tag at the end is not audio
+			long end = channel.size();
+			byte[] tag = new byte[3];
+			if(end >= 128 && channel.read(ByteBuffer.wrap(tag), end - 128) == 3 
+					&& tag[0] == 'T' && tag[1] == 'A' && tag[2] == 'G'){
+				end -= 128;
+			}
+			MP3SeekIndex index = MP3SeekIndex.create(first, reader.getFileOffset(first), end);
+			//2 bytes for each sample on each channel
+			return new MP3FileProducer(path, reader, index, index.getChannels() * 2, singlePrecision);
+		} catch(IOException e){
+			channel.close();
+			throw e;
+		}
+	}
+
+	/** Gets the index of the file, which is filled in as the frames are read */
+	MP3SeekIndex getIndex(){
+		return this.index;
+	}
+
+	/**
+	 * Scans the headers of the rest of the file on a new thread with its own channel, adding them to the index,
+	 * so seeks anywhere only decode from a few frames before, and the number of frames is known.
+	 * The thread stops when this is closed.
+	 * @param onComplete Run on the indexing thread once the whole file is in the index.
+	 */
+	void startIndexing(Runnable onComplete){
+		Thread thread = new Thread(() -> {
+			long time = System.currentTimeMillis();
+			try {
+				MP3FrameReader scanner = new MP3FrameReader(FileChannel.open(path, StandardOpenOption.READ), 0);
+				try {
+					//go on from the last frame in the index
+					int frame = Math.max(0, index.getNumScanned() - 1);
+					scanner.setFramePosition(index.getOffset(frame));
+					MP3Frame temp;
+					while(!isClosed && (temp = scanner.next()) != null){
+						index.add(frame++, scanner.getFileOffset(temp));
+					}
+					if(!isClosed){
+						index.setComplete(frame);
+						System.out.println("Indexed " + frame + " frames in: " + (System.currentTimeMillis() - time) + " ms");
+						onComplete.run();
+					}
+				} finally {
+					scanner.close();
+				}
+			} catch(IOException e){
+				System.out.println("Unable to index the file: " + e.getMessage());
+			}
+		});
+		thread.setName("MP3 indexing thread");
+		//don't want to halt the program from stopping while indexing
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	@Override
+	public void seek(long frame) throws IOException {
+		this.position = frame;
+		this.toSkip = 0;
+		frame += startSkip;
+		int target = (int)Math.min(frame / MP3Decoder.SAMPLES_PER_FRAME, Integer.MAX_VALUE);
+		decoder.reset();
+		this.decodedIndex = decoded.length;
+		int scanned = index.getNumScanned();
+		if(target >= scanned){
+			//find the offset by reading the headers from the last frame in the index
+			moveTo(Math.max(0, scanned - 1));
+			while(index.getNumScanned() <= target && readFrame() != null){
+				//readFrame adds the frames to the index
+			}
+			if(index.getNumScanned() <= target){
+				//past the end of the file, the reader is at the end so nothing is produced
+				return;
+			}
+		}
+
+		//the main data can start in earlier frames, and the overlap and synthesis
+		//filter need the frame before, so decode it and throw away the samples
+		moveTo(Math.max(0, target - RESERVOIR_FRAMES - 1));
+		while(next < target){
+			MP3Frame temp = readFrame();
+			if(temp == null){
+				return;
+			}
+			if(next == target){
+				decoder.decode(temp, decoded, 0);
+			} else {
+				decoder.skip(temp);
+			}
+		}
+		MP3Frame temp = readFrame();
+		if(temp != null){
+			decoder.decode(temp, decoded, 0);
+			this.decodedIndex = (int)(frame % MP3Decoder.SAMPLES_PER_FRAME) * frameSize;
+		}
+	}
+
+	/** Moves the reader to a frame in the index, or the first frame */
+	private void moveTo(int frame){
+		this.next = frame;
+		reader.setFramePosition(index.getOffset(frame));
+	}
+
+	/**
+	 * Reads the next frame, adding it to the index if it is the next one there.
+	 * @return The frame, or null at the end of the file.
+	 */
+	private MP3Frame readFrame() throws IOException {
+		MP3Frame frame = reader.next();
+		if(frame == null){
+			//every frame was read in order from one in the index
+			index.setComplete(next);
+			return null;
+		}
+		index.add(next, reader.getFileOffset(frame));
+		next++;
+		return frame;
+	}
+
+	@Override
+	public int produce(byte[] dst, int offset, int count) throws IOException {
+		count = (int)Math.max(0, Math.min(count, length - position));
+		int len = count * frameSize;
+		int produced = 0;
+		while(produced < len){
+			if(decodedIndex == decoded.length){
+				MP3Frame frame = readFrame();
+				if(frame == null){
+					break;
+				}
+				decoder.decode(frame, decoded, 0);
+				decodedIndex = 0;
+			}
+			if(toSkip > 0){
+				int num = Math.min(toSkip, (decoded.length - decodedIndex) / frameSize);
+				decodedIndex += num * frameSize;
+				toSkip -= num;
+				continue;
+			}
+			int num = Math.min(len - produced, decoded.length - decodedIndex);
+			System.arraycopy(decoded, decodedIndex, dst, offset + produced, num);
+			decodedIndex += num;
+			produced += num;
+		}
+		this.position += produced / frameSize;
+		return produced / frameSize;
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.isClosed = true;
+		reader.close();
+	}
+}
@@ -0,0 +1,185 @@
+package runner;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the frames of an mp3 file one at a time from a channel, through a small window of the file
+ * that slides along as the frames are read, so the memory used does not depend on the size of the file.
+ * If the data at the next position is not a frame of the same format as the first one
+ * (a damaged frame, a tag, or a guessed position after a seek), this moves ahead to the next sync word
+ * that starts a frame that is followed by another frame.
+ * @author zach jones
+ *
+ */
+class MP3FrameReader {
+
+	/** The largest MPEG-1 layer III frame, 320 kbps at 32000 Hz with padding */
+	private static final int MAX_FRAME_SIZE = 1441;
+	/** The number of bytes in the window, the file is read this much at a time */
+	private static final int WINDOW_SIZE = 32 * 1024;
+
+	/** The channel to read the file with */
+	private final FileChannel channel;
+	/** The bytes of the file from windowStart */
+	private final byte[] window;
+	/** The buffer over window, used to read from the channel */
+	private final ByteBuffer buffer;
+	/** The byte offset in the file of window[0] */
+	private long windowStart;
+	/** The number of bytes of the file in the window */
+	private int windowLength;
+	/** The byte offset in the file of the next frame */
+	private long position;
+	/** If position is right after the last frame read, false after moving */
+	private boolean inSync;
+	/** The frame that the others must match, null until the first frame is read */
+	private MP3Frame format;
+	/** The reader used to parse the frames */
+	private final BitReader reader;
+
+	/**
+	 * Creates a reader that starts at the offset.
+	 * @param channel The channel for the file, this is closed with the reader.
+	 * @param position The byte offset in the file of the first frame.
+	 */
+	MP3FrameReader(FileChannel channel, long position){
+		this.channel = channel;
+		this.window = new byte[WINDOW_SIZE];
+		this.buffer = ByteBuffer.wrap(window);
+		this.windowStart = 0;
+		this.windowLength = 0;
+		this.position = position;
+		this.inSync = false;
+		this.reader = new BitReader();
+	}
+
+	/** Moves to a byte offset in the file, if it is not the start of a frame the next frame after it is found */
+	void setPosition(long position){
+		this.position = position;
+		this.inSync = false;
+	}
+
+	/** Moves to the start of a frame that was read before, it is read again without checking the frame after it */
+	void setFramePosition(long position){
+		this.position = position;
+		this.inSync = true;
+	}
+
+	/** Gets the byte offset in the file of the next frame */
+	long getPosition(){
+		return this.position;
+	}
+
+	/** Gets the byte offset in the file of a frame that was just read */
+	long getFileOffset(MP3Frame frame){
+		return windowStart + frame.getOffset();
+	}
+
+	/**
+	 * Reads the next frame.
+	 * The frame's data is the window, so it can only be used until the next frame is read.
+	 * @return The frame, or null at the end of the file.
+	 * @throws IOException If there is an error reading the file.
+	 */
+	MP3Frame next() throws IOException {
+		long start = position;
+		while(true){
+			if(fill(position, 4) < 4){
+				return null;
+			}
+			MP3Frame frame = parse(position);
+			if(frame != null){
+				if(position != start && format != null){
+					System.out.println("Skipped " + (position - start) + " bytes to the next mp3 frame.");
+				}
+				if(format == null){
+					format = frame;
+				}
+				position += frame.getSize();
+				inSync = true;
+				return frame;
+			}
+			//look for the next sync word
+			inSync = false;
+			position++;
+			while(fill(position, 2) == 2 && !isSync((int)(position - windowStart))){
+				position++;
+			}
+		}
+	}
+
+	/**
+	 * Parses the frame at the position, if there is one there that matches the format.
+	 * If this is not in sync, the frame also has to be followed by another frame, or the end of the file.
+	 * @return The frame, or null if there is not a whole frame there.
+	 */
+	private MP3Frame parse(long position) throws IOException {
+		int available = fill(position, MAX_FRAME_SIZE + 4);
+		int index = (int)(position - windowStart);
+		if(!isSync(index)){
+			return null;
+		}
+		MP3Frame frame;
+		try {
+			frame = new MP3Frame(window, index, reader);
+		} catch(IOException e){
+			return null;
+		}
+		if(frame.getSize() > available){
+			//cut off at the end of the file
+			return null;
+		}
+		if(format != null && (frame.getChannels() != format.getChannels()
+				|| frame.getSampleRate() != format.getSampleRate())){
+			return null;
+		}
+		if(!inSync && available >= frame.getSize() + 2 && !isSync(index + frame.getSize())){
+			//a sync word in the middle of the data, not a frame
+			return null;
+		}
+		return frame;
+	}
+
+	/** Checks if the 2 bytes at the index in the window are the sync word of a MPEG-1 layer III frame */
+	private boolean isSync(int index){
+		return (window[index] & 0xFF) == 0xFF && (window[index + 1] & 0xFE) == 0xFA;
+	}
+
+	/**
+	 * Makes sure the bytes of the file from the position are in the window, reading more of the file if needed.
+	 * @param position The byte offset in the file.
+	 * @param length The number of bytes needed, at most MAX_FRAME_SIZE + 4.
+	 * @return The number of the bytes that are in the window, fewer than length at the end of the file.
+	 */
+	private int fill(long position, int length) throws IOException {
+		long windowEnd = windowStart + windowLength;
+		if(position < windowStart || position + length > windowEnd){
+			//slide the window to start at the position, keeping the bytes that are already read
+			int keep = 0;
+			if(position >= windowStart && position < windowEnd){
+				keep = (int)(windowEnd - position);
+				System.arraycopy(window, (int)(position - windowStart), window, 0, keep);
+			}
+			windowStart = position;
+			buffer.clear();
+			buffer.position(keep);
+			while(buffer.hasRemaining()){
+				if(channel.read(buffer, windowStart + buffer.position()) < 0){
+					break;
+				}
+			}
+			windowLength = buffer.position();
+		}
+		return (int)Math.max(0, Math.min(length, windowStart + windowLength - position));
+	}
+
+	/**
+	 * Closes the file.
+	 * @throws IOException If there is an error closing the file.
+	 */
+	void close() throws IOException {
+		channel.close();
+	}
+}
@@ -3,23 +3,35 @@ package runner;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.FileSystems;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Arrays;
-import java.util.LinkedList;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import model.ArrayPCMSource;
+import model.DiskPCMCache;
+import model.PCMSource;
 import model.Player;
 import model.SoundPlayer;
-import runner.MP3Frame.ChannelMode;
+import model.StreamPCMSource;
+import model.TrimmedPCMSource;
 
 public class MP3Runner implements AudioRun {
 
-	/** The acutal sound data for the file, 
-	 * each sample is an array of bytes */
-	private byte[][] data;
+	/** The acutal sound data for the file, decoded a little ahead of playback or all at once */
+	private PCMSource data;
 		
+	/** The decoded blocks, for the hit and miss counts, null if the blocks are not cached */
+	private CachedMP3Source blockCache;
+		
+	/** The offsets of the frames in the file */
+	private MP3SeekIndex seekIndex;
+
 	/** The number of samples per second */
 	private int sampleRate;
 	
@@ -28,18 +40,79 @@ public class MP3Runner implements AudioRun {
 
 	/** The player that makes the sounds */
 	private SoundPlayer player;
+	
+	/** The cache to decode the file into once it plays, null if it isn't cached */
+	private DiskPCMCache cache;
+	/** The file, which is decoded again into the cache */
+	private File file;
+	/** The key of the file in the cache */
+	private String cacheKey;
+	/** The decoding of the file into the cache, null until the file plays */
+	private Future<?> caching;
 
 	/** The player that commands this object */
 	private Player p;
 	
+	/** The number of bytes read at a time when the whole file is read (1 MiB) */
+	private static final int READ_CHUNK_SIZE = 1 << 20;
+	
+	/** The thread that decodes the files into the cache, one file at a time so it doesn't slow playback */
+	private static final ExecutorService CACHE_WORKER = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r);
+		t.setName("MP3 caching thread");
+		t.setPriority(Thread.MIN_PRIORITY);
+		//don't want to halt the program from stopping while caching
+		t.setDaemon(true);
+		return t;
+	});
+	
+	/** The ways that the frames of a mp3 file can be decoded */
+	public enum DecodeMode {
+		/** The frames are read from the file and decoded on a new thread, a little ahead of playback, 
+		 * so files of any size start right away */
+		STREAM,
+		/** The whole file is read and decoded before playing, using all the cores */
+		PARALLEL,
+		/** The whole file is read, and blocks of frames are decoded a little ahead of playback on a new thread.
+		 * The most recent blocks are kept, so seeking back to them does not decode again */
+		CACHED
+	}
+	
 	/**
 	 * Constructor for a mp3 runner. 
-	 * This will load the header information on this thread, and start a new one to decode the data.
+	 * This will load the header information on this thread, and start a new one to read and decode the frames.
 	 * @param filename The filename to read
-	 * @param p The player that constructed this object
+	 * @param p The player that constructed this object, or null if nothing is told about changes
 	 * @throws IOException If there is an issue reading the file, or incorrect formatting.
 	 */
 	public MP3Runner(String filename, Player p) throws IOException{
+		this(filename, p, DecodeMode.STREAM, null);
+	}
+
+	/**
+	 * Constructor for a mp3 runner.
+	 * @param filename The filename to read
+	 * @param p The player that constructed this object, or null if nothing is told about changes
+	 * @param mode How the frames are decoded.
+	 * @param cache The cache of decoded files, if the file is there it is played from there without decoding, 
+	 * otherwise it is decoded into the cache on another thread once it plays. null to not use a cache.
+	 * @throws IOException If there is an issue reading the file, or incorrect formatting.
+	 */
+	public MP3Runner(String filename, Player p, DecodeMode mode, DiskPCMCache cache) throws IOException{
+		this(filename, p, mode, cache, new OpenProgress(filename));
+	}
+
+	/**
+	 * Constructor for a mp3 runner, see MP3Runner(String, Player, DecodeMode, DiskPCMCache).
+	 * @param filename The filename to read
+	 * @param p The player that constructed this object, or null if nothing is told about changes
+	 * @param mode How the frames are decoded.
+	 * @param cache The cache of decoded files, or null to not use a cache.
+	 * @param progress Where to put how much of the file was read and how many frames were found.
+	 * @throws IOException If there is an issue reading the file, or incorrect formatting, 
+	 * or an InterruptedIOException if the progress is cancelled while the file is read.
+	 */
+	public MP3Runner(String filename, Player p, DecodeMode mode, DiskPCMCache cache, OpenProgress progress) throws IOException{
 		this.p = p;
 		
 		File f = new File(filename);
@@ -47,94 +120,155 @@ public class MP3Runner implements AudioRun {
 			throw new FileNotFoundException("The file: " + filename + " does not exist!");
 		}
 		
+		DiskPCMCache.Entry cached = null;
+		String key = null;
+		if(cache != null){
+			key = cache.getKey(f);
+			cached = cache.open(key);
+		}
+		
+		if(cached != null){
+			System.out.println("Playing the decoded file from the cache.");
+			this.data = cached.getSource();
+			this.sampleRate = cached.getSampleRate();
+			this.numChannels = cached.getChannels();
+		} else if(mode == DecodeMode.STREAM){
+			openStream(f);
+			progress.setFramesIndexed(seekIndex.getNumScanned());
+		} else {
+			List<MP3Frame> frames = readFrames(f, progress);
+			if(mode == DecodeMode.PARALLEL){
+				long time = System.currentTimeMillis();
+				//2 bytes for each sample on each channel
+				this.data = new ArrayPCMSource(ParallelMP3Decoder.decode(frames, this.numChannels), this.numChannels * 2);
+				System.out.println("Decoded file in: " + (System.currentTimeMillis() - time) + " ms");
+				progress.checkCancelled();
+			} else {
+				this.blockCache = new CachedMP3Source(frames, this.numChannels, CachedMP3Source.DEFAULT_CACHE_BYTES);
+				this.data = blockCache;
+			}
+			if(seekIndex.isGapless()){
+				//only play the samples that were encoded, so tracks play one after another without a gap
+				this.data = new TrimmedPCMSource(data, seekIndex.getStartSkip(), seekIndex.getGaplessLength());
+			}
+		}
+		
+		if(cache != null && cached == null){
+			//files that are opened ahead are only cached if they play
+			this.cache = cache;
+			this.file = f;
+			this.cacheKey = key;
+		}
+		
+		//the decoder makes 16 bit samples
+		this.player = new SoundPlayer(data, this.sampleRate, 16, 
+				this.numChannels, false, this);
+	}
+
+	/**
+	 * Reads the whole file and finds all the frames.
+	 * @param progress Where to put how much was read, this stops if it is cancelled.
+	 * @return The frames, which are parsed from the file's contents as they are used.
+	 */
+	private List<MP3Frame> readFrames(File f, OpenProgress progress) throws IOException {
 		long fileSize = f.length();
 		if(fileSize > Integer.MAX_VALUE){
 			//over 2gb for the file, usual size is around 8 mb for ~4 minute song
 			throw new IOException("The specified file is too large to read.");
 		}
 		
-		Path path = FileSystems.getDefault().getPath(filename);
-		//fastest way to read the contents of the entire file
+		Path path = FileSystems.getDefault().getPath(f.getAbsolutePath());
 		//since there are so many calls to reading the file, 
 		//it is faster to read the while thing and then parse.
-		byte[] fileData = Files.readAllBytes(path);
+		//it is read in chunks, so the progress can be shown and it can be cancelled
+		byte[] fileData = new byte[(int)fileSize];
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+			ByteBuffer buffer = ByteBuffer.wrap(fileData);
+			while(buffer.position() < fileData.length){
+				buffer.limit(Math.min(fileData.length, buffer.position() + READ_CHUNK_SIZE));
+				if(channel.read(buffer) < 0){
+					throw new IOException("The file got shorter while it was read.");
+				}
+				progress.setBytesScanned(buffer.position());
+				progress.checkCancelled();
+			}
+		}
 		System.out.println("Read entire file.");
 		
-		int index = 0; //the index used for convenience to help decode the file
-		
-		if(fileData[0] == 0x49 && fileData[1] == 0x44 && fileData[2] == 0x33){
-			//TAG v2 structure
-			//2 bytes of not important data to play the sound
-						
-			//next 4 bytes are the size, but the leading bit of each byte is 0, and ignored.
-			index = 6;
-			//example: 0x0000_0201 is 257 base 10
-			int length = 0;
-			length |= (int)(fileData[index]) << 21;
-			length |= (int)fileData[index + 1] << 14;
-			length |= (int)fileData[index + 2] << 7;
-			length |= (int)fileData[index + 3]; //the last 7 bits
-			index += 4;
-			
-			//the tag information is not important for reading
-			index += length;
-			System.out.println("length of tag: " + length);
-		} 
-		
 		//index is at the start of the first frame
-		//load the first frame
+		int index = (int)MP3SeekIndex.getTagSize(fileData);
 		System.out.println("Byte index of first frame: " + index);
-		System.out.print("First bits of first frame: ");
-		System.out.println(Arrays.toString(MP3Frame.toBits(fileData, index, 4)));
-		
-		MP3Frame first = new MP3Frame(fileData, index);
-		this.sampleRate = first.getSampleRate(); //assume constant sample rate
-		index += first.getSize();
 		
-		List<MP3Frame> frames = new LinkedList<>();
-		frames.add(first);
-		//load all the frames
-		while(index < fileData.length){
-			MP3Frame temp = new MP3Frame(fileData, index);
-			frames.add(temp);
-			index += temp.getSize();	
+		//find all the frames, there can be a tag (ID3v1) or a cut off frame at the end
+		this.seekIndex = MP3SeekIndex.scan(fileData, index);
+		this.sampleRate = seekIndex.getSampleRate(); //assume constant sample rate
+		List<MP3Frame> frames = seekIndex.getFrames(fileData);
+		if(frames.isEmpty()){
+			throw new IOException("There are no audio frames in the file.");
 		}
 		System.out.println("Number of frames: " + frames.size());
-		
-		int totalNumberSamples = frames.size() * 1152; //1152 samples / frame
-		
-		if(first.getNumChannels() == ChannelMode.MONO){
-			this.numChannels = 1;
-			this.data = new byte[totalNumberSamples][2];
-		} else {
-			this.numChannels = 2;
-			this.data = new byte[totalNumberSamples][4];
+		progress.setFramesIndexed(frames.size());
+		this.numChannels = seekIndex.getChannels();
+		return frames;
+	}
+
+	/**
+	 * Opens the file to be read a few frames at a time as it is played, only the first frame is read now.
+	 */
+	private void openStream(File f) throws IOException {
+		MP3FileProducer producer = MP3FileProducer.open(f.toPath());
+		this.seekIndex = producer.getIndex();
+		this.sampleRate = seekIndex.getSampleRate(); //assume constant sample rate
+		this.numChannels = seekIndex.getChannels();
+		System.out.println("Number of frames: " + seekIndex.getNumFrames());
+
+		//2 bytes for each sample on each channel
+		int bufferFrames = this.sampleRate * StreamPCMSource.DEFAULT_BUFFER_MILLIS / 1000;
+		//the producer cuts off the encoder delay and padding,
+		//without a header the length is estimated from the bitrate until the frames are counted
+		StreamPCMSource stream = new StreamPCMSource(producer, seekIndex.getGaplessLength(), seekIndex.isLengthExact(),
+				this.numChannels * 2, bufferFrames, "MP3 decoding thread");
+		this.data = stream;
+		//so seeks don't have to read the headers up to the frame
+		producer.startIndexing(() -> {
+			//the producer stops at the gapless length from the header
+			if(!seekIndex.isGapless()){
+				stream.setNumFrames(seekIndex.getLengthFrames());
+			}
+		});
+	}
+
+	/**
+	 * Decodes the whole file into the cache on the caching thread, after the files that are waiting there.
+	 * This only happens the first time it is called, and stops if the runner is closed first.
+	 */
+	private synchronized void startCaching(){
+		if(cache == null || caching != null){
+			return;
 		}
-		
-		//use 8 * channels bits per sample (1 byte for each sample on each channel)
-		this.player = new SoundPlayer(data, this.sampleRate, this.numChannels * 8, 
-				this.numChannels, false, this);
-		
-		//the frames are all loaded
-		Thread t = new Thread(() -> {
-			int offset = 0;
-			for(MP3Frame frame : frames){
-				frame.loadData(data, offset);
-				offset += 1152; //1152 samples per frame
+		this.caching = CACHE_WORKER.submit(() -> {
+			try {
+				long time = System.currentTimeMillis();
+				if(cache.store(cacheKey, this.sampleRate, this.numChannels, MP3FileProducer.open(file.toPath()))){
+					System.out.println("Cached the decoded file in: " + (System.currentTimeMillis() - time) + " ms");
+				}
+			} catch(IOException e){
+				System.out.println("Unable to cache the decoded file: " + e.getMessage());
 			}
-			
 		});
-		//don't want to halt the program from stopping while loading the frames.
-		t.setDaemon(true);
-		t.start();
-		
 	}
-	
-	
-	
+
+	/** Stops decoding the file into the cache, or takes it off the caching thread if it hasn't started */
+	private synchronized void stopCaching(){
+		if(caching != null){
+			caching.cancel(true);
+		}
+	}
 	
 	@Override
 	public void play() {
+		//the file is only decoded into the cache once it plays
+		startCaching();
 		//delegate to player
 		player.play();
 	}
@@ -153,8 +287,12 @@ public class MP3Runner implements AudioRun {
 
 	@Override
 	public void close() {
-		// no filereaders to close, the constructor closes the files.
-		//close the player
+		//stop decoding, which closes the file, and close the player
+		stopCaching();
+		if(blockCache != null){
+			System.out.println(blockCache);
+		}
+		data.close();
 		player.close();
 	}
 
@@ -170,10 +308,47 @@ public class MP3Runner implements AudioRun {
 		return this.player.getLength();
 	}
 
+	@Override
+	public void seek(long frame) {
+		//delegate to player, the decoder restarts at the indexed frame after warming up on the ones before
+		this.player.seek(frame);
+	}
+
+	@Override
+	public void seekMillis(long millis) {
+		//delegate to player
+		this.player.seekMillis(millis);
+	}
+
+	@Override
+	public long getPositionFrames() {
+		//delegate to player
+		return this.player.getPositionFrames();
+	}
+
+	@Override
+	public long getLengthFrames() {
+		//delegate to player
+		return this.player.getLengthFrames();
+	}
+
+	@Override
+	public long getBufferedFrames() {
+		//delegate to player
+		return this.player.getBufferedFrames();
+	}
+
+	@Override
+	public SoundPlayer getSoundPlayer() {
+		return this.player;
+	}
+
 	@Override
 	public void stateChanged() {
 		//echo back
-		p.stateChanged();
+		if(p != null){
+			p.stateChanged();
+		}
 	}
 
 	@Override
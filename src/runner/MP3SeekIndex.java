@@ -0,0 +1,416 @@
+package runner;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * The byte offsets of the audio frames of an mp3 file, so any frame (and so any time) can be found right away.
+ * This is built by scanning the frame headers, only the offsets are kept and the frames are parsed again when needed.
+ * The whole file can be scanned at once, or the frames can be added as they are read when streaming the file,
+ * from the streaming thread and a thread that scans the rest of the headers, so the methods are synchronized.
+ * Only the offsets of scanned frames are given, estimates are not exact enough to seek to.
+ * If the file starts with a Xing/Info or VBRI frame (written by encoders for variable bitrate files),
+ * its frame count is the length until the whole file is scanned. Without one, the length is estimated from the bitrate.
+ * @author zach jones
+ *
+ */
+class MP3SeekIndex {
+
+	/** The number of samples that the synthesis filterbank delays the output by, which is not in the encoder delay */
+	private static final int DECODER_DELAY = 529;
+	/** The number of bytes of the Xing table of contents, one for each percent of the file */
+	private static final int XING_TOC_SIZE = 100;
+
+	/** The byte offsets of the frames that were scanned, in order */
+	private long[] offsets;
+	/** The number of frames that were scanned */
+	private int numScanned;
+	/** If all the frames of the file were scanned */
+	private boolean isComplete;
+	/** The byte offset in the file of the first audio frame (after any header frame) */
+	private long firstOffset;
+	/** The number of audio frames estimated from the size of the file and the bitrate */
+	private int estimatedFrames;
+	/** The number of audio frames from the Xing or VBRI header, or -1 if there is no header */
+	private int headerFrames;
+	/** The number of samples the encoder added to the start, from the LAME tag, or -1 if there is no tag */
+	private int encoderDelay;
+	/** The number of samples the encoder added to the end to fill the last frame, from the LAME tag */
+	private int encoderPadding;
+	/** The number of samples per second */
+	private final int sampleRate;
+	/** The number of channels */
+	private final int channels;
+
+	/** Creates an empty index for a file with the sample rate and number of channels */
+	private MP3SeekIndex(int sampleRate, int channels){
+		this.offsets = new long[1024];
+		this.numScanned = 0;
+		this.headerFrames = -1;
+		this.encoderDelay = -1;
+		this.sampleRate = sampleRate;
+		this.channels = channels;
+	}
+
+	/**
+	 * Gets the size of the ID3v2 tag at the start of the file.
+	 * @param header The first 10 bytes (or more) of the file.
+	 * @return The byte offset of the first frame, 0 if there is no tag.
+	 */
+	static long getTagSize(byte[] header){
+		if(header.length < 10 || header[0] != 0x49 || header[1] != 0x44 || header[2] != 0x33){
+			return 0;
+		}
+		//TAG v2 structure
+		//2 bytes of not important data to play the sound
+					
+		//next 4 bytes are the size, but the leading bit of each byte is 0, and ignored.
+		int index = 6;
+		//example: 0x0000_0201 is 257 base 10
+		int length = 0;
+		length |= (int)(header[index]) << 21;
+		length |= (int)header[index + 1] << 14;
+		length |= (int)header[index + 2] << 7;
+		length |= (int)header[index + 3]; //the last 7 bits
+		index += 4;
+		
+		//the tag information is not important for reading
+		return index + length;
+	}
+
+	/**
+	 * Creates an index with no frames scanned, the frames are added with add as they are read,
+	 * and it is marked complete with setComplete when the end of the file is reached.
+	 * @param first The first frame of the file, which can be a Xing/Info or VBRI header frame.
+	 * @param fileOffset The byte offset in the file of the first frame.
+	 * @param end The byte offset in the file after the last audio frame.
+	 * @return The index, which estimates the length until all the frames are added.
+	 * @throws IOException If the first frame is not a MPEG-1 layer III frame.
+	 */
+	static MP3SeekIndex create(MP3Frame first, long fileOffset, long end) throws IOException {
+		if(!first.isMpeg1()){
+			throw new IOException("Only MPEG-1 layer III files can be decoded.");
+		}
+		MP3SeekIndex index = new MP3SeekIndex(first.getSampleRate(), first.getChannels());
+		index.firstOffset = fileOffset;
+		//the average number of bytes in a frame, from the bitrate of the first frame
+		double bytesPerFrame = 144.0 * first.getBitsPerSample() / first.getSampleRate();
+		int limit = Math.min(first.getData().length, first.getOffset() + first.getSize());
+		if(index.readVBRHeader(first, limit)){
+			//the header frame has no audio in it
+			index.firstOffset += first.getSize();
+		}
+		//round up, the stream ends early if there are fewer frames
+		index.estimatedFrames = (int)Math.min(Integer.MAX_VALUE, 
+				(long)Math.ceil((end - index.firstOffset) / bytesPerFrame));
+		return index;
+	}
+
+	/**
+	 * Scans the frames of the file and builds the index.
+	 * Data that is not a frame of the same format as the first (a damaged frame, or a tag) is skipped
+	 * to the next sync word that starts a frame that is followed by another frame, the same as MP3FrameReader,
+	 * so the whole file and the streaming decoders find the same frames.
+	 * The scan ends at the end of the data, or at a frame that is cut off.
+	 * @param data The contents of the file.
+	 * @param start The index in data of the first frame (after any ID3v2 tag).
+	 * @return The index of the audio frames.
+	 * @throws IOException If the first frame is not a MPEG-1 layer III frame.
+	 */
+	static MP3SeekIndex scan(byte[] data, int start) throws IOException {
+		//one reader is used to parse all of the frames
+		BitReader reader = new BitReader();
+		MP3Frame first = new MP3Frame(data, start, reader);
+		MP3SeekIndex index = create(first, start, data.length);
+
+		int offset = (int)index.firstOffset;
+		//the smallest frame is 96 bytes, so a header count that could not fit is not used
+		if(index.headerFrames > 0 && index.headerFrames <= data.length / 96){
+			index.offsets = new long[index.headerFrames];
+		}
+		boolean inSync = true;
+		int skipStart = offset;
+		while(offset + 4 <= data.length){
+			MP3Frame temp = parse(data, offset, reader, first, inSync);
+			if(temp == null){
+				//look for the next sync word
+				inSync = false;
+				offset++;
+				while(offset + 2 <= data.length && !isSync(data, offset)){
+					offset++;
+				}
+				continue;
+			}
+			if(!inSync){
+				System.out.println("Skipped " + (offset - skipStart) + " bytes to the next mp3 frame.");
+			}
+			index.add(offset);
+			offset += temp.getSize();
+			inSync = true;
+			skipStart = offset;
+		}
+		index.isComplete = true;
+		return index;
+	}
+
+	/**
+	 * Parses the frame at the offset, if there is one there with the same format as the first frame.
+	 * If the scan is not in sync, the frame also has to be followed by another frame, or the end of the data.
+	 * @return The frame, or null if there is not a whole frame there.
+	 */
+	private static MP3Frame parse(byte[] data, int offset, BitReader reader, MP3Frame first, boolean inSync){
+		if(!isSync(data, offset)){
+			return null;
+		}
+		MP3Frame frame;
+		try {
+			frame = new MP3Frame(data, offset, reader);
+		} catch(IOException e){
+			return null;
+		}
+		int end = offset + frame.getSize();
+		if(end > data.length || frame.getChannels() != first.getChannels()
+				|| frame.getSampleRate() != first.getSampleRate()){
+			return null;
+		}
+		if(!inSync && end + 2 <= data.length && !isSync(data, end)){
+			//a sync word in the middle of the data, not a frame
+			return null;
+		}
+		return frame;
+	}
+
+	/** Checks if the 2 bytes at the index are the sync word of a MPEG-1 layer III frame */
+	private static boolean isSync(byte[] data, int index){
+		return (data[index] & 0xFF) == 0xFF && (data[index + 1] & 0xFE) == 0xFA;
+	}
+
+	/**
+	 * Adds the offset of the next frame, the frames must be added in order with none missed.
+	 * @param offset The byte offset in the file of the frame at index getNumScanned().
+	 */
+	synchronized void add(long offset){
+		if(numScanned == offsets.length){
+			offsets = Arrays.copyOf(offsets, offsets.length * 2);
+		}
+		offsets[numScanned++] = offset;
+	}
+
+	/**
+	 * Adds the offset of a frame if it is the next one, so more than one reader can add the frames they read.
+	 * @param frame The index of the audio frame, nothing is added unless it is getNumScanned().
+	 * @param offset The byte offset in the file of the frame.
+	 */
+	synchronized void add(int frame, long offset){
+		if(frame == numScanned){
+			add(offset);
+		}
+	}
+
+	/**
+	 * Marks that all the frames of the file were scanned, after a reader reached the end of the file.
+	 * @param numFrames The number of frames that the reader read, nothing is marked unless all of them were added.
+	 */
+	synchronized void setComplete(int numFrames){
+		if(numFrames == numScanned){
+			this.isComplete = true;
+		}
+	}
+
+	/**
+	 * Reads the Xing/Info or VBRI header, if the first frame is one.
+	 * @param first The first frame of the file.
+	 * @param limit The index in the frame's data after the last byte of the frame.
+	 * @return true if the first frame is a header frame, false if it is audio.
+	 */
+	private boolean readVBRHeader(MP3Frame first, int limit){
+		byte[] data = first.getData();
+		//the Xing header is right after the side information, 
+		//some encoders put it there even with a crc, so it is 2 bytes before the main data
+		int xing = first.getOffset() + 4 + (first.getChannels() == 1 ? 17 : 32);
+		if(xing + 8 <= limit && !hasTag(data, xing, "Xing") && !hasTag(data, xing, "Info")){
+			xing += 2;
+		}
+		if(xing + 8 <= limit && (hasTag(data, xing, "Xing") || hasTag(data, xing, "Info"))){
+			int flags = readInt(data, xing + 4, 4);
+			int index = xing + 8;
+			if((flags & 0x1) != 0 && index + 4 <= limit){
+				this.headerFrames = readInt(data, index, 4);
+				index += 4;
+			}
+			if((flags & 0x2) != 0){
+				//the number of bytes
+				index += 4;
+			}
+			if((flags & 0x4) != 0){
+				//the table of contents, offsets are only used once the frames are scanned
+				index += XING_TOC_SIZE;
+			}
+			if((flags & 0x8) != 0){
+				//the quality
+				index += 4;
+			}
+			readLameTag(data, index, limit);
+			return true;
+		}
+
+		//the VBRI header is 32 bytes after the header
+		int vbri = first.getOffset() + 36;
+		if(vbri + 18 <= limit && hasTag(data, vbri, "VBRI")){
+			this.headerFrames = readInt(data, vbri + 14, 4);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Reads the encoder delay and padding from the LAME tag after the Xing header, if there is one.
+	 * LAME and ffmpeg write the tag, it starts with the 9 character encoder version.
+	 */
+	private void readLameTag(byte[] data, int index, int limit){
+		if(index + 24 > limit || !(hasTag(data, index, "LAME") || hasTag(data, index, "Lavc") || hasTag(data, index, "Lavf"))){
+			return;
+		}
+		//12 bits of delay and 12 bits of padding, after the version, revision, lowpass, replay gain and flags
+		int value = readInt(data, index + 21, 3);
+		this.encoderDelay = value >>> 12;
+		this.encoderPadding = value & 0xFFF;
+	}
+
+	/** Checks if the 4 bytes at index are the tag */
+	private static boolean hasTag(byte[] data, int index, String tag){
+		for(int i = 0; i < 4; i++){
+			if(data[index + i] != tag.charAt(i)){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** Reads a big endian number of 1 to 4 bytes */
+	private static int readInt(byte[] data, int index, int numBytes){
+		int value = 0;
+		for(int i = 0; i < numBytes; i++){
+			value = (value << 8) | (data[index + i] & 0xFF);
+		}
+		return value;
+	}
+
+	/** Gets the number of samples per second */
+	int getSampleRate(){
+		return this.sampleRate;
+	}
+
+	/** Gets the number of channels, 1 or 2 */
+	int getChannels(){
+		return this.channels;
+	}
+
+	/**
+	 * Gets the number of audio frames in the file.
+	 * This is the number of frames scanned once the whole file is scanned,
+	 * before that it is the Xing or VBRI count, or the estimate from the bitrate if there is no header.
+	 */
+	synchronized int getNumFrames(){
+		if(isComplete && numScanned > 0){
+			return numScanned;
+		}
+		if(headerFrames > 0){
+			return headerFrames;
+		}
+		return Math.max(numScanned, estimatedFrames);
+	}
+
+	/** Gets if the number of frames is from the Xing or VBRI header or a scan of the whole file, not estimated */
+	synchronized boolean isLengthExact(){
+		return isComplete || headerFrames > 0;
+	}
+
+	/** Gets the number of frames that were scanned, their offsets are exact */
+	synchronized int getNumScanned(){
+		return this.numScanned;
+	}
+
+	/** Gets the number of samples (on each channel) in the file */
+	long getLengthFrames(){
+		return (long)getNumFrames() * MP3Decoder.SAMPLES_PER_FRAME;
+	}
+
+	/** Gets if the LAME tag gave the encoder delay and padding, so the samples that were encoded are known */
+	boolean isGapless(){
+		return this.encoderDelay >= 0;
+	}
+
+	/**
+	 * Gets the number of decoded samples before the first sample that was encoded, 
+	 * the encoder delay and the delay of the decoder's filterbank.
+	 * @return The number of samples to skip, 0 if there is no LAME tag.
+	 */
+	int getStartSkip(){
+		return isGapless() ? encoderDelay + DECODER_DELAY : 0;
+	}
+
+	/** Gets the number of samples (on each channel) that were encoded, without the delay and padding */
+	long getGaplessLength(){
+		if(!isGapless()){
+			return getLengthFrames();
+		}
+		return Math.max(0, getLengthFrames() - encoderDelay - encoderPadding);
+	}
+
+	/**
+	 * Gets the byte offset in the file of a frame.
+	 * @param frame The index of the audio frame, one that was scanned or the first frame.
+	 * @return The offset.
+	 */
+	synchronized long getOffset(int frame){
+		if(frame < numScanned){
+			return offsets[frame];
+		}
+		if(frame == 0){
+			return firstOffset;
+		}
+		throw new IndexOutOfBoundsException("Frame: " + frame + ", scanned: " + numScanned);
+	}
+
+	/**
+	 * Gets the scanned frames as a list, each frame is parsed when it is got from the list.
+	 * @param data The contents of the file that was scanned.
+	 * @return The list of frames.
+	 */
+	List<MP3Frame> getFrames(byte[] data){
+		return new FrameList(data);
+	}
+
+	/** A list of the scanned frames that parses each frame when it is needed */
+	private class FrameList extends AbstractList<MP3Frame> implements RandomAccess {
+		/** The contents of the file */
+		private final byte[] data;
+
+		/** Creates the list over the file */
+		FrameList(byte[] data){
+			this.data = data;
+		}
+
+		@Override
+		public MP3Frame get(int index){
+			if(index < 0 || index >= numScanned){
+				throw new IndexOutOfBoundsException("Frame: " + index + ", scanned: " + numScanned);
+			}
+			try {
+				return new MP3Frame(data, (int)offsets[index]);
+			} catch (IOException e) {
+				//the frame was parsed when it was scanned
+				throw new IllegalStateException("Frame changed after the scan: " + index, e);
+			}
+		}
+
+		@Override
+		public int size(){
+			return numScanned;
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package runner;
+
+import java.io.InterruptedIOException;
+
+/**
+ * How far the opening of a file has gotten, and a way to cancel it.
+ * The thread that opens the file sets the progress and checks if it was cancelled,
+ * any other thread can read the progress or cancel it.
+ * @author zach jones
+ *
+ */
+public class OpenProgress {
+
+	/** The name of the file */
+	private final String filename;
+	/** The number of bytes in the file, 0 until it is known */
+	private volatile long totalBytes;
+	/** The number of bytes that were read */
+	private volatile long bytesScanned;
+	/** The number of frames of the file that were found */
+	private volatile long framesIndexed;
+	/** If this was cancelled */
+	private volatile boolean isCancelled;
+
+	/**
+	 * Creates the progress of opening a file, with nothing done.
+	 * @param filename The name of the file.
+	 */
+	public OpenProgress(String filename){
+		this.filename = filename;
+	}
+
+	/** Gets the name of the file */
+	public String getFilename(){
+		return this.filename;
+	}
+
+	/** Sets the number of bytes in the file */
+	void setTotalBytes(long totalBytes){
+		this.totalBytes = totalBytes;
+	}
+
+	/** Gets the number of bytes in the file, 0 if it isn't known */
+	public long getTotalBytes(){
+		return this.totalBytes;
+	}
+
+	/** Sets the number of bytes that were read */
+	void setBytesScanned(long bytesScanned){
+		this.bytesScanned = bytesScanned;
+	}
+
+	/** Gets the number of bytes that were read */
+	public long getBytesScanned(){
+		return this.bytesScanned;
+	}
+
+	/** Sets the number of frames that were found */
+	void setFramesIndexed(long framesIndexed){
+		this.framesIndexed = framesIndexed;
+	}
+
+	/** Gets the number of frames that were found */
+	public long getFramesIndexed(){
+		return this.framesIndexed;
+	}
+
+	/**
+	 * Gets the part of the file that was read.
+	 * @return From 0 to 1, or -1 if the size of the file isn't known.
+	 */
+	public double getFraction(){
+		long total = this.totalBytes;
+		if(total <= 0){ return -1; }
+		return Math.min(1, (double)this.bytesScanned / total);
+	}
+
+	/** Cancels the opening, the thread that is opening stops the next time it checks */
+	public void cancel(){
+		this.isCancelled = true;
+	}
+
+	/** Gets if this was cancelled */
+	public boolean isCancelled(){
+		return this.isCancelled;
+	}
+
+	/**
+	 * Stops the opening if it was cancelled.
+	 * @throws InterruptedIOException If this was cancelled.
+	 */
+	void checkCancelled() throws InterruptedIOException {
+		if(this.isCancelled){
+			throw new InterruptedIOException("Opening " + filename + " was cancelled.");
+		}
+	}
+}
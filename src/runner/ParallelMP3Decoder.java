@@ -0,0 +1,84 @@
+package runner;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Decodes all the frames of an mp3 file at once, splitting the frames into segments that are decoded on all cores.
+ * Each segment has its own decoder, which is warmed up on the frames before the segment:
+ * the frames that hold the main data of the frame before the segment are added to the bit reservoir,
+ * and the frame before the segment is decoded (and thrown away) to fill in the overlap and synthesis filter.
+ * The state only depends on the last frame, so the samples are the same as decoding all the frames in order.
+ * @author zach jones
+ *
+ */
+class ParallelMP3Decoder extends RecursiveAction {
+
+	private static final long serialVersionUID = 1L;
+
+	/** The most frames that are decoded by one task (about 1.5 seconds of audio) */
+	private static final int SEGMENT_FRAMES = 64;
+
+	/** All the frames of the file */
+	private final List<MP3Frame> frames;
+	/** The index of the first frame to decode */
+	private final int start;
+	/** The index after the last frame to decode */
+	private final int end;
+	/** The number of bytes in a sample on all channels */
+	private final int frameSize;
+	/** The array to write the samples of all the frames to */
+	private final byte[] pcm;
+
+	/** Creates a task that decodes the frames from start to end (exclusive) */
+	private ParallelMP3Decoder(List<MP3Frame> frames, int start, int end, int frameSize, byte[] pcm){
+		this.frames = frames;
+		this.start = start;
+		this.end = end;
+		this.frameSize = frameSize;
+		this.pcm = pcm;
+	}
+
+	/**
+	 * Decodes all the frames on the common fork join pool.
+	 * @param frames The frames of the file, this should have fast random access (not a linked list).
+	 * @param channels The number of channels, all of the frames must have the same number.
+	 * @return The 16 bit little endian samples of all the frames, the channels interleaved.
+	 * @throws IOException If the decoded file is too large for one array.
+	 */
+	static byte[] decode(List<MP3Frame> frames, int channels) throws IOException {
+		int frameSize = channels * 2;
+		long size = (long)frames.size() * MP3Decoder.SAMPLES_PER_FRAME * frameSize;
+		if(size > Integer.MAX_VALUE - 8){
+			throw new IOException("The decoded file is too large to hold in memory.");
+		}
+		byte[] pcm = new byte[(int)size];
+		ForkJoinPool.commonPool().invoke(new ParallelMP3Decoder(frames, 0, frames.size(), frameSize, pcm));
+		return pcm;
+	}
+
+	@Override
+	protected void compute(){
+		if(end - start > SEGMENT_FRAMES){
+			int middle = (start + end) >>> 1;
+			invokeAll(new ParallelMP3Decoder(frames, start, middle, frameSize, pcm),
+					new ParallelMP3Decoder(frames, middle, end, frameSize, pcm));
+			return;
+		}
+
+		MP3Decoder decoder = new MP3Decoder();
+		int bytesPerFrame = MP3Decoder.SAMPLES_PER_FRAME * frameSize;
+		if(start > 0){
+			//get to the same state as decoding the frames before in order
+			for(int i = MP3Decoder.getReservoirStart(frames, start - 1); i < start - 1; i++){
+				decoder.skip(frames.get(i));
+			}
+			decoder.decode(frames.get(start - 1), new byte[bytesPerFrame], 0);
+		}
+		for(int i = start; i < end; i++){
+			decoder.decode(frames.get(i), pcm, i * bytesPerFrame);
+		}
+	}
+}
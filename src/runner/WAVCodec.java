@@ -0,0 +1,34 @@
+package runner;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import model.Player;
+
+/**
+ * The wav format, a RIFF file with a WAVE form.
+ * @author zach jones
+ *
+ */
+public class WAVCodec implements Codec {
+
+	@Override
+	public String getName() {
+		return "WAV";
+	}
+
+	@Override
+	public int probe(ByteBuffer header, String filename) {
+		if(header.limit() >= 12 && header.getInt(0) == 0x52494646 && header.getInt(8) == 0x57415645){
+			//"RIFF" and "WAVE"
+			return 100;
+		}
+		return filename.toLowerCase().endsWith(".wav") ? 10 : 0;
+	}
+
+	@Override
+	public AudioRun open(String filename, Player p, OpenProgress progress) throws IOException {
+		//only the header is read, the samples are loaded as they are played
+		return new WAVRunner(filename, p);
+	}
+}
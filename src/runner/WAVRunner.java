@@ -6,6 +6,10 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 
 import model.Converter;
+import model.MappedPCMSource;
+import model.FileProducer;
+import model.PCMSource;
+import model.StreamPCMSource;
 import model.Player;
 import model.SoundPlayer;
 
@@ -31,7 +35,7 @@ public class WAVRunner implements AudioRun {
 	private int bitsPerSample;
 
 	/** The acutal sound data for the file */
-	private byte[][] frames;
+	private PCMSource frames;
 
 	/** The player that makes the sounds */
 	private SoundPlayer player;
@@ -39,7 +43,25 @@ public class WAVRunner implements AudioRun {
 	/** The player that commands this object */
 	private Player p;
 
+	/**
+	 * Constructor for a wav runner, that memory-maps the sound data.
+	 * @param filename The filename to read
+	 * @param p The player that constructed this object, or null if nothing is told about changes
+	 * @throws IOException If there is an issue reading the file, or incorrect formatting.
+	 */
 	public WAVRunner(String filename, Player p) throws IOException{
+		this(filename, p, true);
+	}
+
+	/**
+	 * Constructor for a wav runner.
+	 * @param filename The filename to read
+	 * @param p The player that constructed this object, or null if nothing is told about changes
+	 * @param mapped If true, the sound data is memory-mapped and streamed from the file as it plays, 
+	 * otherwise the sound data is read from the file on a new thread, a little ahead of playback.
+	 * @throws IOException If there is an issue reading the file, or incorrect formatting.
+	 */
+	public WAVRunner(String filename, Player p, boolean mapped) throws IOException{
 		this.p = p;
 		long time = System.currentTimeMillis();
 		//The default byte ordering assumed for WAVE data files is little-endian. 
@@ -141,23 +163,20 @@ public class WAVRunner implements AudioRun {
 		//calculations to determine the data size
 		long totalSamples = result / this.bytesPerSample;
 
-		//set the data's size
-		this.frames = new byte[(int)totalSamples][this.bytesPerSample];
-
-		//the rest of the file is the sound data
-		//load using another thread
-		new Thread(() -> {
-			try {
-				//read into the frames, each of which is a byte array
-				for(int i = 0; i < this.frames.length; i++){
-					dat.readFully(this.frames[i]);
-				}
-				System.out.println("Finished loading");
-			} catch (IOException e){
-				System.out.println("Error: " + e.getMessage());
-			}
-			
-		}).start();
+		//the data starts where the header ends
+		long dataOffset = dis.getChannel().position();
+		if(mapped){
+			this.frames = new MappedPCMSource(dis.getChannel(), dataOffset, totalSamples, this.bytesPerSample);
+			//the mapping stays valid after the file is closed
+			dat.close();
+			dis.close();
+		} else {
+			//the rest of the file is the sound data
+			//load using another thread, which closes the file when done
+			int bufferFrames = (int)(this.sampleRate * StreamPCMSource.DEFAULT_BUFFER_MILLIS / 1000);
+			this.frames = new StreamPCMSource(new FileProducer(dis.getChannel(), dataOffset, this.bytesPerSample), 
+					totalSamples, this.bytesPerSample, bufferFrames, "WAV loading thread");
+		}
 		
 		this.player = new SoundPlayer(frames, this.sampleRate, bitsPerSample, numChannels, false, this);
 
@@ -194,7 +213,8 @@ public class WAVRunner implements AudioRun {
 		} catch (IOException e) {
 			System.err.println("Unable to close the fileReader for file: " + this.filename);
 		}
-		//close the player
+		//stop any loading, and close the player
+		frames.close();
 		player.close();
 	}
 
@@ -210,6 +230,41 @@ public class WAVRunner implements AudioRun {
 		return this.player.getLength();
 	}
 
+	@Override
+	public void seek(long frame) {
+		//delegate to player, the frames are found by their offset in the file
+		this.player.seek(frame);
+	}
+
+	@Override
+	public void seekMillis(long millis) {
+		//delegate to player
+		this.player.seekMillis(millis);
+	}
+
+	@Override
+	public long getPositionFrames() {
+		//delegate to player
+		return this.player.getPositionFrames();
+	}
+
+	@Override
+	public long getLengthFrames() {
+		//delegate to player
+		return this.player.getLengthFrames();
+	}
+
+	@Override
+	public long getBufferedFrames() {
+		//delegate to player
+		return this.player.getBufferedFrames();
+	}
+
+	@Override
+	public SoundPlayer getSoundPlayer() {
+		return this.player;
+	}
+
 	@Override
 	public String toString() {
 		return this.numChannels + " channels @" + this.sampleRate + " Hz";
@@ -218,7 +273,9 @@ public class WAVRunner implements AudioRun {
 	/** Called by the SoundPlayer */
 	public void stateChanged(){
 		//carries the change down to the GUI
-		p.stateChanged();
+		if(p != null){
+			p.stateChanged();
+		}
 	}
 
 	@Override
@@ -0,0 +1,218 @@
+package model;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.Control;
+import javax.sound.sampled.Control.Type;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.Line;
+import javax.sound.sampled.LineListener;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * Checks that SoundPlayer starts writing again within a few milliseconds of play() after a pause.
+ * The player writes to a line that takes the frames at the speed they would play, but makes no sound,
+ * so this runs without a sound card.
+ * Run with: java model.SoundPlayerResumeTest
+ * @author zach jones
+ *
+ */
+public class SoundPlayerResumeTest {
+
+	/** The number of times to pause and resume */
+	private static final int ROUNDS = 50;
+	/** The most milliseconds that the median resume can take */
+	private static final double MAX_MEDIAN_MILLIS = 2;
+	/** The most milliseconds that any resume can take, a few times the median for the scheduler */
+	private static final double MAX_MILLIS = 10;
+
+	public static void main(String[] args) throws InterruptedException {
+		//a minute of 44.1 kHz stereo silence, so it doesn't reach the end
+		int sampleRate = 44100;
+		PCMSource source = new ArrayPCMSource(new byte[sampleRate * 4 * 60], 4);
+		SoundPlayer sp = new SoundPlayer(source, sampleRate, 16, 2, false, null){
+			@Override
+			protected SourceDataLine getLine(AudioFormat format) {
+				return new FakeLine();
+			}
+		};
+		sp.play();
+		Thread.sleep(100);
+
+		long[] latencies = new long[ROUNDS];
+		for(int i = 0; i < ROUNDS; i++){
+			sp.pause();
+			//long enough for the thread to finish its write and wait
+			Thread.sleep(30);
+			sp.play();
+			Thread.sleep(20);
+			latencies[i] = sp.getResumeLatencyNanos();
+		}
+		sp.close();
+
+		Arrays.sort(latencies);
+		double median = latencies[ROUNDS / 2] / 1e6;
+		double max = latencies[ROUNDS - 1] / 1e6;
+		System.out.println(String.format("Resume latency: median %.3f ms, max %.3f ms", median, max));
+		if(latencies[0] < 0){
+			System.out.println("The latency was not measured.");
+			System.exit(1);
+		}
+		if(median > MAX_MEDIAN_MILLIS || max > MAX_MILLIS){
+			System.out.println("Resuming is too slow, the median should be under " + MAX_MEDIAN_MILLIS
+					+ " ms and the max under " + MAX_MILLIS + " ms.");
+			System.exit(1);
+		}
+		System.out.println("Resuming is fast enough.");
+	}
+
+	/**
+	 * A line that makes no sound, writes wait for as long as the frames would take to play.
+	 */
+	private static class FakeLine implements SourceDataLine {
+		/** The format that the line was opened with */
+		private AudioFormat format;
+		/** The size of the buffer in bytes */
+		private int bufferSize;
+		/** If the line is open */
+		private boolean isOpen;
+		/** If the line is started */
+		private boolean isRunning;
+		/** The number of frames written */
+		private long framesWritten;
+
+		@Override
+		public void open(AudioFormat format, int bufferSize) {
+			this.format = format;
+			this.bufferSize = bufferSize;
+			this.isOpen = true;
+		}
+
+		@Override
+		public void open(AudioFormat format) {
+			open(format, (int)format.getSampleRate() * format.getFrameSize() / 2);
+		}
+
+		@Override
+		public void open() {
+			throw new IllegalStateException("The line needs a format");
+		}
+
+		@Override
+		public int write(byte[] b, int off, int len) {
+			int frames = len / format.getFrameSize();
+			//the time the frames take to play
+			LockSupport.parkNanos((long)(frames * 1e9 / format.getSampleRate()));
+			framesWritten += frames;
+			return len;
+		}
+
+		@Override
+		public void drain() {
+			//nothing is held
+		}
+
+		@Override
+		public void flush() {
+			//nothing is held
+		}
+
+		@Override
+		public void start() {
+			this.isRunning = true;
+		}
+
+		@Override
+		public void stop() {
+			this.isRunning = false;
+		}
+
+		@Override
+		public boolean isRunning() {
+			return this.isRunning;
+		}
+
+		@Override
+		public boolean isActive() {
+			return this.isRunning;
+		}
+
+		@Override
+		public AudioFormat getFormat() {
+			return this.format;
+		}
+
+		@Override
+		public int getBufferSize() {
+			return this.bufferSize;
+		}
+
+		@Override
+		public int available() {
+			return this.bufferSize;
+		}
+
+		@Override
+		public int getFramePosition() {
+			return (int)this.framesWritten;
+		}
+
+		@Override
+		public long getLongFramePosition() {
+			return this.framesWritten;
+		}
+
+		@Override
+		public long getMicrosecondPosition() {
+			return (long)(this.framesWritten * 1e6 / format.getSampleRate());
+		}
+
+		@Override
+		public float getLevel() {
+			return AudioSystem.NOT_SPECIFIED;
+		}
+
+		@Override
+		public Line.Info getLineInfo() {
+			return new DataLine.Info(SourceDataLine.class, format);
+		}
+
+		@Override
+		public void close() {
+			this.isOpen = false;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return this.isOpen;
+		}
+
+		@Override
+		public Control[] getControls() {
+			return new Control[0];
+		}
+
+		@Override
+		public boolean isControlSupported(Type control) {
+			return false;
+		}
+
+		@Override
+		public Control getControl(Type control) {
+			throw new IllegalArgumentException("No controls");
+		}
+
+		@Override
+		public void addLineListener(LineListener listener) {
+			//the line has no events
+		}
+
+		@Override
+		public void removeLineListener(LineListener listener) {
+			//the line has no events
+		}
+	}
+}
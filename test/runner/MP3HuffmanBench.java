@@ -0,0 +1,68 @@
+package runner;
+
+import java.util.Random;
+
+/**
+ * Times decoding random codes with the lookup tables of MP3Huffman, against walking a tree one bit at a time.
+ * Run with: java runner.MP3HuffmanBench [table] [rounds]
+ * The default is table 24, which most loud music uses for the big values.
+ * @author zach jones
+ *
+ */
+public class MP3HuffmanBench {
+
+	/** The number of codes in the stream that is decoded each round */
+	private static final int NUM_CODES = 200000;
+
+	public static void main(String[] args) {
+		int table = args.length > 0 ? Integer.parseInt(args[0]) : 24;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+		if(MP3Huffman.getCodes(table) == null){
+			System.out.println("Table " + table + " has no codes.");
+			return;
+		}
+		boolean quad = table >= MP3Huffman.TABLE_A;
+		byte[] data = MP3HuffmanTest.randomStream(table, NUM_CODES, new Random(1));
+		int[] tree = MP3HuffmanTest.buildTree(table);
+		int linbits = quad ? 0 : MP3Huffman.getLinbits(table);
+		BitReader br = new BitReader();
+		int[] values = new int[4];
+
+		long sum = 0;
+		for(int round = 0; round < rounds; round++){
+			//the first rounds warm up the JIT, the last one is printed
+			long time = System.nanoTime();
+			br.setData(data, 0, data.length);
+			for(int i = 0; i < NUM_CODES; i++){
+				if(quad){
+					MP3Huffman.decodeQuad(table == MP3Huffman.TABLE_A + 1, br, values, 0);
+				} else {
+					MP3Huffman.decodePair(table, br, values, 0);
+				}
+				sum += values[0];
+			}
+			long lookupTime = System.nanoTime() - time;
+
+			time = System.nanoTime();
+			br.setData(data, 0, data.length);
+			for(int i = 0; i < NUM_CODES; i++){
+				if(quad){
+					MP3HuffmanTest.decodeQuad(tree, br, values);
+				} else {
+					MP3HuffmanTest.decodePair(tree, linbits, br, values);
+				}
+				sum -= values[0];
+			}
+			long treeTime = System.nanoTime() - time;
+
+			if(round == rounds - 1){
+				System.out.println(String.format("Table %d: lookup %.1f ns/code, tree %.1f ns/code, %.2fx faster",
+						table, (double)lookupTime / NUM_CODES, (double)treeTime / NUM_CODES, (double)treeTime / lookupTime));
+			}
+		}
+		//both decode the same values, so this is 0, it keeps the loops from being removed
+		if(sum != 0){
+			System.out.println("The decoders don't match: " + sum);
+		}
+	}
+}
@@ -0,0 +1,198 @@
+package runner;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks that the lookup tables of MP3Huffman decode the same values as walking
+ * a binary tree one bit at a time, for every table.
+ * Each table decodes a stream of random codes, with their linbits and sign bits,
+ * and both decoders have to give the same values and end at the same bit.
+ * Run with: java runner.MP3HuffmanTest
+ * @author zach jones
+ *
+ */
+public class MP3HuffmanTest {
+
+	/** The number of random codes to decode for each table */
+	private static final int NUM_CODES = 20000;
+
+	public static void main(String[] args) {
+		Random random = new Random(42);
+		int failed = 0;
+		for(int table = 0; table < MP3Huffman.TABLE_A + 2; table++){
+			if(MP3Huffman.getCodes(table) == null){
+				continue;
+			}
+			boolean quad = table >= MP3Huffman.TABLE_A;
+			byte[] data = randomStream(table, NUM_CODES, random);
+			int[] tree = buildTree(table);
+			BitReader fast = new BitReader();
+			BitReader slow = new BitReader();
+			fast.setData(data, 0, data.length);
+			slow.setData(data, 0, data.length);
+			int[] expected = new int[4];
+			int[] actual = new int[4];
+			for(int i = 0; i < NUM_CODES; i++){
+				if(quad){
+					MP3Huffman.decodeQuad(table == MP3Huffman.TABLE_A + 1, fast, actual, 0);
+					decodeQuad(tree, slow, expected);
+				} else {
+					MP3Huffman.decodePair(table, fast, actual, 0);
+					decodePair(tree, MP3Huffman.getLinbits(table), slow, expected);
+				}
+				if(!Arrays.equals(expected, actual) || fast.getBitIndex() != slow.getBitIndex()){
+					System.out.println("Table " + table + ", code " + i + ": expected " + Arrays.toString(expected)
+							+ " at bit " + slow.getBitIndex() + ", got " + Arrays.toString(actual) + " at bit " + fast.getBitIndex());
+					failed++;
+					break;
+				}
+			}
+		}
+		if(failed > 0){
+			System.out.println(failed + " tables failed.");
+			System.exit(1);
+		}
+		System.out.println("All tables decode the same as the trees.");
+	}
+
+	/**
+	 * Makes a stream of random codes from a table, as they are in the main data.
+	 * @param table The table, big values tables are 1 to 31, count1 tables are at TABLE_A.
+	 * @param numCodes The number of codes.
+	 * @param random The random numbers to use.
+	 * @return The bytes.
+	 */
+	static byte[] randomStream(int table, int numCodes, Random random){
+		int[] codes = MP3Huffman.getCodes(table);
+		byte[] lengths = MP3Huffman.getLengths(table);
+		int ylen = MP3Huffman.getYLen(table);
+		boolean quad = table >= MP3Huffman.TABLE_A;
+		int linbits = quad ? 0 : MP3Huffman.getLinbits(table);
+		BitWriter out = new BitWriter(numCodes * 48 / 8 + 8);
+		for(int n = 0; n < numCodes; n++){
+			int i = random.nextInt(codes.length);
+			out.write(codes[i], lengths[i]);
+			if(quad){
+				//a sign bit for each value that isn't 0
+				out.write(random.nextInt(16), Integer.bitCount(i));
+				continue;
+			}
+			int[] xy = {i / ylen, i % ylen};
+			for(int value : xy){
+				if(value == 15 && linbits > 0){
+					out.write(random.nextInt(1 << linbits), linbits);
+				}
+				if(value != 0){
+					out.write(random.nextInt(2), 1);
+				}
+			}
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Builds a binary tree to decode the codes of a table one bit at a time.
+	 * Node n has its children at tree[2n] (bit 0) and tree[2n + 1] (bit 1).
+	 * A child that is negative is a leaf holding the value -(x * 16 + y) - 1.
+	 */
+	static int[] buildTree(int table){
+		int[] codes = MP3Huffman.getCodes(table);
+		byte[] lengths = MP3Huffman.getLengths(table);
+		int ylen = MP3Huffman.getYLen(table);
+		//a full tree has one less node than leaves
+		int[] tree = new int[2 * codes.length];
+		int numNodes = 1;
+		for(int i = 0; i < codes.length; i++){
+			int value = (i / ylen) * 16 + (i % ylen);
+			int node = 0;
+			for(int bit = lengths[i] - 1; bit >= 0; bit--){
+				int child = 2 * node + ((codes[i] >>> bit) & 1);
+				if(bit == 0){
+					tree[child] = -value - 1;
+				} else {
+					if(tree[child] == 0){
+						tree[child] = numNodes++;
+					}
+					node = tree[child];
+				}
+			}
+		}
+		return tree;
+	}
+
+	/** Walks down a tree until a leaf is reached, returns x * 16 + y */
+	static int decode(int[] tree, BitReader br){
+		int node = 0;
+		while(true){
+			int child = tree[2 * node + br.get1Bit()];
+			if(child < 0){
+				return -child - 1;
+			}
+			node = child;
+		}
+	}
+
+	/** Decodes a pair of big values with a tree, the same as MP3Huffman.decodePair */
+	static void decodePair(int[] tree, int linbits, BitReader br, int[] values){
+		int xy = decode(tree, br);
+		int x = xy >>> 4;
+		if(x == 15 && linbits > 0){
+			x += br.getBits(linbits);
+		}
+		if(x != 0 && br.get1Bit() == 1){
+			x = -x;
+		}
+		int y = xy & 0xF;
+		if(y == 15 && linbits > 0){
+			y += br.getBits(linbits);
+		}
+		if(y != 0 && br.get1Bit() == 1){
+			y = -y;
+		}
+		values[0] = x;
+		values[1] = y;
+	}
+
+	/** Decodes four count1 values with a tree, the same as MP3Huffman.decodeQuad */
+	static void decodeQuad(int[] tree, BitReader br, int[] values){
+		int vwxy = decode(tree, br);
+		for(int i = 0; i < 4; i++){
+			int value = (vwxy >>> (3 - i)) & 1;
+			if(value != 0 && br.get1Bit() == 1){
+				value = -1;
+			}
+			values[i] = value;
+		}
+	}
+
+	/**
+	 * Writes numbers of bits into an array, most significant bit first.
+	 */
+	static class BitWriter {
+		/** The bytes written */
+		private final byte[] data;
+		/** The index of the next bit to write */
+		private int bitIndex;
+
+		/** Creates a writer that can hold the number of bytes */
+		BitWriter(int size){
+			this.data = new byte[size];
+		}
+
+		/** Writes the low numBits of the value */
+		void write(int value, int numBits){
+			for(int bit = numBits - 1; bit >= 0; bit--){
+				if(((value >>> bit) & 1) == 1){
+					data[bitIndex >>> 3] |= 0x80 >>> (bitIndex & 7);
+				}
+				bitIndex++;
+			}
+		}
+
+		/** Gets the bytes that were written, with the last byte padded with 0s */
+		byte[] toByteArray(){
+			return Arrays.copyOf(data, (bitIndex + 7) >>> 3);
+		}
+	}
+}
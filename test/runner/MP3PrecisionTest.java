@@ -0,0 +1,93 @@
+package runner;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Checks that decoding with floats (FloatFilterbank) gives nearly the same samples as with doubles (DoubleFilterbank).
+ * Each file is decoded both ways, and the signal to noise ratio of the difference and the largest difference
+ * of a sample are printed, with the time each took.
+ * Run with: java runner.MP3PrecisionTest files.mp3...
+ * @author zach jones
+ *
+ */
+public class MP3PrecisionTest {
+
+	/** The lowest signal to noise ratio of the float samples, in dB */
+	private static final double MIN_SNR = 90;
+	/** The largest difference of a 16 bit sample */
+	private static final int MAX_DIFFERENCE = 2;
+	/** The number of samples decoded at a time */
+	private static final int CHUNK_FRAMES = 4096;
+
+	public static void main(String[] args) throws IOException {
+		if(args.length == 0){
+			System.out.println("Usage: java runner.MP3PrecisionTest files.mp3...");
+			System.exit(2);
+		}
+		int failed = 0;
+		for(String arg : args){
+			Path path = Paths.get(arg);
+			long time = System.nanoTime();
+			short[] doubles = decode(path, false);
+			long doubleTime = System.nanoTime() - time;
+			time = System.nanoTime();
+			short[] floats = decode(path, true);
+			long floatTime = System.nanoTime() - time;
+
+			if(doubles.length != floats.length){
+				System.out.println(arg + ": the lengths differ, " + doubles.length + " and " + floats.length + " samples.");
+				failed++;
+				continue;
+			}
+			double signal = 0;
+			double noise = 0;
+			int maxDifference = 0;
+			for(int i = 0; i < doubles.length; i++){
+				int difference = Math.abs(doubles[i] - floats[i]);
+				signal += (double)doubles[i] * doubles[i];
+				noise += (double)difference * difference;
+				maxDifference = Math.max(maxDifference, difference);
+			}
+			//no difference at all is an infinite ratio
+			double snr = noise == 0 ? Double.POSITIVE_INFINITY : 10 * Math.log10(signal / noise);
+			System.out.println(String.format("%s: SNR %.1f dB, max difference %d, doubles %d ms, floats %d ms",
+					path.getFileName(), snr, maxDifference, doubleTime / 1_000_000, floatTime / 1_000_000));
+			if(snr < MIN_SNR || maxDifference > MAX_DIFFERENCE){
+				failed++;
+			}
+		}
+		if(failed > 0){
+			System.out.println(failed + " files differ by more than " + MIN_SNR + " dB SNR or "
+					+ MAX_DIFFERENCE + " in a sample.");
+			System.exit(1);
+		}
+		System.out.println("Floats decode the same as doubles, to within " + MAX_DIFFERENCE + " in a sample.");
+	}
+
+	/** Decodes a whole file into 16 bit samples, with the channels interleaved */
+	private static short[] decode(Path path, boolean singlePrecision) throws IOException {
+		MP3FileProducer producer = MP3FileProducer.open(path, singlePrecision);
+		int channels = producer.getIndex().getChannels();
+		short[] samples = new short[1 << 16];
+		int numSamples = 0;
+		byte[] chunk = new byte[CHUNK_FRAMES * channels * 2];
+		try {
+			int count;
+			while((count = producer.produce(chunk, 0, CHUNK_FRAMES)) > 0){
+				if(numSamples + count * channels > samples.length){
+					samples = Arrays.copyOf(samples, Math.max(samples.length * 2, numSamples + count * channels));
+				}
+				//the decoder makes little endian samples
+				for(int i = 0; i < count * channels; i++){
+					samples[numSamples++] = (short)((chunk[2 * i + 1] << 8) | (chunk[2 * i] & 0xFF));
+				}
+			}
+		} finally {
+			producer.close();
+		}
+		return Arrays.copyOf(samples, numSamples);
+	}
+}